@@ -1,72 +1,289 @@
 package info.kgeorgiy.ja.karaseva.concurrent;
 
-import info.kgeorgiy.java.advanced.concurrent.ScalarIP;
+import info.kgeorgiy.java.advanced.concurrent.ListIP;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
 import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class IterativeParallelism implements ListIP {
+    // how often (in elements) a block looks at the shared "answer is known" flag
+    private static final int CHECK_PERIOD_MASK = 63;
 
-public class IterativeParallelism implements ScalarIP {
     private final ParallelMapper mapper;
+    private final ExecutorService pool;
+    // lists shorter than this are processed in the calling thread
+    private final int sequentialThreshold;
 
     public IterativeParallelism() {
-        mapper = null;
+        this(null, null, 0);
     }
 
     public IterativeParallelism(ParallelMapper mapper) {
+        this(mapper, null, 0);
+    }
+
+    public IterativeParallelism(int sequentialThreshold) {
+        this(ForkJoinPool.commonPool(), sequentialThreshold);
+    }
+
+    public IterativeParallelism(ExecutorService pool, int sequentialThreshold) {
+        this(null, pool, sequentialThreshold);
+        if (pool == null) {
+            throw new IllegalArgumentException("pool can not be null");
+        }
+    }
+
+    private IterativeParallelism(ParallelMapper mapper, ExecutorService pool, int sequentialThreshold) {
+        if (sequentialThreshold < 0) {
+            throw new IllegalArgumentException("sequentialThreshold must be >= 0");
+        }
         this.mapper = mapper;
+        this.pool = pool;
+        this.sequentialThreshold = sequentialThreshold;
     }
 
-    private <T> List<List<? extends T>> getSublists(int threads, List<? extends T> values) {
+    private <T> List<Spliterator<? extends T>> getSublists(int threads, List<? extends T> values) {
+        if (!(values instanceof RandomAccess)) {
+            return copyBlocks(threads, values);
+        }
         int sizeBlock = values.size() / threads;
-        final List<List<? extends T>> blocks = new ArrayList<>();
+        final List<Spliterator<? extends T>> blocks = new ArrayList<>();
         int currentIndex = 0;
         for (int i = 0; i < threads; i++) {
             if (i == (threads - (values.size() % threads))) {
                 sizeBlock++;
             }
-            blocks.add(values.subList(currentIndex, currentIndex + sizeBlock));
+            blocks.add(values.subList(currentIndex, currentIndex + sizeBlock).spliterator());
             currentIndex += sizeBlock;
         }
         return blocks;
     }
 
-    private <T, E, R> R getResult(int threads, List<? extends T> values,
-                                  Function<List<? extends T>, E> getAns,
-                                  Function<List<? extends E>, R> mergeAns) throws InterruptedException {
+    // one pass over the list instead of subList(...), which walks from the head for every block
+    private <T> List<Spliterator<? extends T>> copyBlocks(int threads, List<? extends T> values) {
+        final List<Spliterator<? extends T>> blocks = new ArrayList<>();
+        final Iterator<? extends T> iterator = values.iterator();
+        for (int i = 0; i < threads; i++) {
+            final int sizeBlock = values.size() / threads + (i < values.size() % threads ? 1 : 0);
+            final List<T> block = new ArrayList<>(sizeBlock);
+            for (int j = 0; j < sizeBlock; j++) {
+                block.add(iterator.next());
+            }
+            blocks.add(block.spliterator());
+        }
+        return blocks;
+    }
+
+    // splits the largest remaining part until there are enough blocks; prefixes stay before suffixes
+    private <T> List<Spliterator<? extends T>> split(int threads, Spliterator<? extends T> values) {
+        final List<Spliterator<? extends T>> blocks = new ArrayList<>(List.of(values));
+        while (blocks.size() < threads) {
+            int largest = 0;
+            for (int i = 1; i < blocks.size(); i++) {
+                if (blocks.get(i).estimateSize() > blocks.get(largest).estimateSize()) {
+                    largest = i;
+                }
+            }
+            final Spliterator<? extends T> prefix = blocks.get(largest).trySplit();
+            if (prefix == null) {
+                break;
+            }
+            blocks.add(largest, prefix);
+        }
+        return blocks;
+    }
+
+    private static <T> Stream<? extends T> stream(Spliterator<? extends T> block) {
+        return StreamSupport.stream(block, false);
+    }
+
+    private static void checkThreads(int threads) {
         if (threads < 1) {
             throw new IllegalArgumentException("threads = " + threads + ", expected threads >= 1");
         }
+    }
+
+    private <T, E, R> R getResult(int threads, List<? extends T> values,
+                                  Function<Stream<? extends T>, E> getAns,
+                                  Function<List<? extends E>, R> mergeAns) throws InterruptedException {
+        checkThreads(threads);
+        if (values.size() < sequentialThreshold) {
+            return mergeAns.apply(List.of(getAns.apply(values.stream())));
+        }
         threads = Math.max(1, Math.min(threads, values.size()));
-        final List<List<? extends T>> lists = getSublists(threads, values);
+        return getResult(getSublists(threads, values), getAns, mergeAns);
+    }
 
+    private <T, E, R> R getResult(int threads, Spliterator<? extends T> values,
+                                  Function<Stream<? extends T>, E> getAns,
+                                  Function<List<? extends E>, R> mergeAns) throws InterruptedException {
+        checkThreads(threads);
+        if (values.estimateSize() < sequentialThreshold) {
+            return mergeAns.apply(List.of(getAns.apply(stream(values))));
+        }
+        return getResult(split(threads, values), getAns, mergeAns);
+    }
+
+    private <T, E, R> R getResult(List<Spliterator<? extends T>> blocks,
+                                  Function<Stream<? extends T>, E> getAns,
+                                  Function<List<? extends E>, R> mergeAns) throws InterruptedException {
+        return solveBlocks(blocks, block -> getAns.apply(stream(block)), mergeAns);
+    }
+
+    // primitive arrays are split by index range, each block is a tight loop over [from, to)
+    private <E, R> R getResult(int threads, int length, IndexRangeFunction<E> getAns,
+                               Function<List<? extends E>, R> mergeAns) throws InterruptedException {
+        checkThreads(threads);
+        if (length < sequentialThreshold) {
+            return mergeAns.apply(List.of(getAns.apply(0, length)));
+        }
+        threads = Math.max(1, Math.min(threads, length));
+        final List<int[]> ranges = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i < threads; i++) {
+            final int to = from + length / threads + (i < length % threads ? 1 : 0);
+            ranges.add(new int[]{from, to});
+            from = to;
+        }
+        return solveBlocks(ranges, range -> getAns.apply(range[0], range[1]), mergeAns);
+    }
+
+    @FunctionalInterface
+    private interface IndexRangeFunction<E> {
+        E apply(int from, int to);
+    }
+
+    private <B, E, R> R solveBlocks(List<B> blocks, Function<B, E> solve,
+                                    Function<List<? extends E>, R> mergeAns) throws InterruptedException {
         final List<E> partialAnswers;
-        if (mapper == null) {
-            partialAnswers = new ArrayList<>(Collections.nCopies(threads, null));
+        if (pool != null) {
+            partialAnswers = invokeAll(blocks, solve);
+        } else if (mapper == null) {
+            partialAnswers = new ArrayList<>(Collections.nCopies(blocks.size(), null));
             List<Thread> workers = new ArrayList<>();
-            for (int i = 0; i < threads; i++) {
+            for (int i = 0; i < blocks.size(); i++) {
                 final int finalI = i;
-                workers.add(new Thread(() -> partialAnswers.set(finalI, getAns.apply(lists.get(finalI)))));
+                workers.add(new Thread(() -> partialAnswers.set(finalI, solve.apply(blocks.get(finalI)))));
                 workers.get(i).start();
             }
             for (Thread worker : workers) {
                 worker.join();
             }
         } else {
-            partialAnswers = mapper.map(getAns, lists);
+            partialAnswers = mapper.map(solve, blocks);
         }
         return mergeAns.apply(partialAnswers);
 
     }
 
+    private <B, E> List<E> invokeAll(List<B> blocks, Function<B, E> solve) throws InterruptedException {
+        final List<Callable<E>> tasks = new ArrayList<>();
+        for (B block : blocks) {
+            tasks.add(() -> solve.apply(block));
+        }
+        final List<E> partialAnswers = new ArrayList<>();
+        for (Future<E> future : pool.invokeAll(tasks)) {
+            try {
+                partialAnswers.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return partialAnswers;
+    }
+
+    private static <T> Function<Stream<? extends T>, Optional<T>> getMax(Comparator<? super T> comparator) {
+        return (stream) -> stream.<T>map(Function.identity()).max(comparator);
+    }
+
+    private static <T> Function<List<? extends Optional<T>>, T> mergeMax(Comparator<? super T> comparator) {
+        return (list) -> list.stream().flatMap(Optional::stream).max(comparator).orElseThrow();
+    }
+
+    private static <T> Function<Stream<? extends T>, Boolean> getAll(Predicate<? super T> predicate) {
+        final AtomicBoolean counterexampleFound = new AtomicBoolean();
+        return (stream) -> {
+            final int[] checked = new int[1];
+            return stream.allMatch(value -> {
+                if ((checked[0]++ & CHECK_PERIOD_MASK) == 0 && counterexampleFound.get()) {
+                    // another block has already decided the answer
+                    return false;
+                }
+                if (!predicate.test(value)) {
+                    counterexampleFound.set(true);
+                    return false;
+                }
+                return true;
+            });
+        };
+    }
+
+    private static Function<List<? extends Boolean>, Boolean> mergeAll() {
+        return (list) -> list.stream().allMatch(b -> b);
+    }
+
+    // blocks are already arrays of the right size, so this is one allocation and a copy per block
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> concat(List<? extends Object[]> blocks) {
+        int size = 0;
+        for (Object[] block : blocks) {
+            size += block.length;
+        }
+        final Object[] result = new Object[size];
+        int currentIndex = 0;
+        for (Object[] block : blocks) {
+            System.arraycopy(block, 0, result, currentIndex, block.length);
+            currentIndex += block.length;
+        }
+        return (List<T>) Arrays.asList(result);
+    }
+
     @Override
     public <T> T maximum(int threads, List<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
-        Function<List<? extends T>, T> getMax = (list) -> list.stream().max(comparator).orElseThrow();
-        return getResult(threads, values, getMax, getMax);
+        return getResult(threads, values, getMax(comparator), mergeMax(comparator));
+    }
+
+    public <T> T maximum(int threads, Collection<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
+        return maximum(threads, values.spliterator(), comparator);
+    }
+
+    public <T> T maximum(int threads, Stream<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
+        return maximum(threads, values.spliterator(), comparator);
+    }
+
+    public <T> T maximum(int threads, Spliterator<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
+        return getResult(threads, values, getMax(comparator), mergeMax(comparator));
     }
 
     @Override
@@ -74,13 +291,216 @@ public class IterativeParallelism implements ScalarIP {
         return maximum(threads, values, comparator.reversed());
     }
 
+    public <T> T minimum(int threads, Collection<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
+        return maximum(threads, values, comparator.reversed());
+    }
+
+    public <T> T minimum(int threads, Stream<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
+        return maximum(threads, values, comparator.reversed());
+    }
+
+    public <T> T minimum(int threads, Spliterator<? extends T> values, Comparator<? super T> comparator) throws InterruptedException {
+        return maximum(threads, values, comparator.reversed());
+    }
+
     @Override
     public <T> boolean all(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
-        return getResult(threads, values, (list) -> list.stream().allMatch(predicate), (list) -> list.stream().allMatch(b -> b));
+        return getResult(threads, values, getAll(predicate), mergeAll());
+    }
+
+    public <T> boolean all(int threads, Collection<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return all(threads, values.spliterator(), predicate);
+    }
+
+    public <T> boolean all(int threads, Stream<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return all(threads, values.spliterator(), predicate);
+    }
+
+    public <T> boolean all(int threads, Spliterator<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return getResult(threads, values, getAll(predicate), mergeAll());
     }
 
     @Override
     public <T> boolean any(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
         return !all(threads, values, predicate.negate());
     }
+
+    public <T> boolean any(int threads, Collection<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return !all(threads, values, predicate.negate());
+    }
+
+    public <T> boolean any(int threads, Stream<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return !all(threads, values, predicate.negate());
+    }
+
+    public <T> boolean any(int threads, Spliterator<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return !all(threads, values, predicate.negate());
+    }
+
+    @Override
+    public String join(int threads, List<?> values) throws InterruptedException {
+        return getResult(threads, values,
+                (stream) -> stream.map(String::valueOf).collect(Collectors.joining()),
+                (list) -> String.join("", list));
+    }
+
+    @Override
+    public <T> List<T> filter(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        return getResult(threads, values, (stream) -> stream.filter(predicate).toArray(), IterativeParallelism::concat);
+    }
+
+    @Override
+    public <T, U> List<U> map(int threads, List<? extends T> values, Function<? super T, ? extends U> f) throws InterruptedException {
+        return getResult(threads, values, (stream) -> stream.map(f).toArray(), IterativeParallelism::concat);
+    }
+
+    // identity and operator must form a monoid: operator is associative and identity is its neutral element
+    public <T> T reduce(int threads, List<? extends T> values, T identity, BinaryOperator<T> operator) throws InterruptedException {
+        return mapReduce(threads, values, Function.identity(), identity, operator);
+    }
+
+    public <T, R> R mapReduce(int threads, List<? extends T> values, Function<? super T, ? extends R> lift,
+                              R identity, BinaryOperator<R> operator) throws InterruptedException {
+        return getResult(threads, values,
+                (stream) -> stream.<R>map(lift).reduce(identity, operator),
+                (list) -> list.stream().<R>map(Function.identity()).reduce(identity, operator));
+    }
+
+    private static void checkNotEmpty(int length) {
+        if (length == 0) {
+            throw new NoSuchElementException("values is empty");
+        }
+    }
+
+    public int maximum(int threads, int[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return getResult(threads, values.length, (from, to) -> {
+            int max = values[from];
+            for (int i = from + 1; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, (list) -> list.stream().mapToInt(Integer::intValue).max().orElseThrow());
+    }
+
+    public int minimum(int threads, int[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return getResult(threads, values.length, (from, to) -> {
+            int min = values[from];
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, (list) -> list.stream().mapToInt(Integer::intValue).min().orElseThrow());
+    }
+
+    public long sum(int threads, int[] values) throws InterruptedException {
+        return getResult(threads, values.length, (from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, (list) -> list.stream().mapToLong(Long::longValue).sum());
+    }
+
+    public int count(int threads, int[] values, IntPredicate predicate) throws InterruptedException {
+        return getResult(threads, values.length, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, (list) -> list.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    public long maximum(int threads, long[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return getResult(threads, values.length, (from, to) -> {
+            long max = values[from];
+            for (int i = from + 1; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, (list) -> list.stream().mapToLong(Long::longValue).max().orElseThrow());
+    }
+
+    public long minimum(int threads, long[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return getResult(threads, values.length, (from, to) -> {
+            long min = values[from];
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, (list) -> list.stream().mapToLong(Long::longValue).min().orElseThrow());
+    }
+
+    public long sum(int threads, long[] values) throws InterruptedException {
+        return getResult(threads, values.length, (from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, (list) -> list.stream().mapToLong(Long::longValue).sum());
+    }
+
+    public int count(int threads, long[] values, LongPredicate predicate) throws InterruptedException {
+        return getResult(threads, values.length, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, (list) -> list.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    public double maximum(int threads, double[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return getResult(threads, values.length, (from, to) -> {
+            double max = values[from];
+            for (int i = from + 1; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, (list) -> list.stream().mapToDouble(Double::doubleValue).max().orElseThrow());
+    }
+
+    public double minimum(int threads, double[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return getResult(threads, values.length, (from, to) -> {
+            double min = values[from];
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, (list) -> list.stream().mapToDouble(Double::doubleValue).min().orElseThrow());
+    }
+
+    public double sum(int threads, double[] values) throws InterruptedException {
+        return getResult(threads, values.length, (from, to) -> {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, (list) -> list.stream().mapToDouble(Double::doubleValue).sum());
+    }
+
+    public int count(int threads, double[] values, DoublePredicate predicate) throws InterruptedException {
+        return getResult(threads, values.length, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, (list) -> list.stream().mapToInt(Integer::intValue).sum());
+    }
 }
@@ -0,0 +1,89 @@
+package info.kgeorgiy.ja.karaseva.concurrent;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+// compares primitive-array reductions of IterativeParallelism with the same reductions over boxed lists.
+// Usage: IterativeParallelismBenchmark [elements [threads [rounds]]]
+// every operation is run rounds times after as many warm-up rounds, the best and the median times are printed
+public class IterativeParallelismBenchmark {
+    private static final long SEED = 2021;
+    private static final String[] DEFAULTS = {"10000000", "8", "20"};
+
+    @FunctionalInterface
+    private interface Task {
+        Object run() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("arguments can not be null");
+            return;
+        }
+        if (args.length > DEFAULTS.length) {
+            System.err.println("expect at most " + DEFAULTS.length + " arguments");
+            return;
+        }
+        final String[] values = DEFAULTS.clone();
+        System.arraycopy(args, 0, values, 0, args.length);
+        final int elements, threads, rounds;
+        try {
+            elements = Integer.parseInt(values[0]);
+            threads = Integer.parseInt(values[1]);
+            rounds = Integer.parseInt(values[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("isn't correct number: " + e.getMessage());
+            return;
+        }
+
+        final SplittableRandom random = new SplittableRandom(SEED);
+        final int[] ints = random.ints(elements).toArray();
+        final double[] doubles = random.doubles(elements).toArray();
+        final List<Integer> boxedInts = Arrays.stream(ints).boxed().collect(Collectors.toList());
+        final List<Double> boxedDoubles = Arrays.stream(doubles).boxed().collect(Collectors.toList());
+        final IterativeParallelism parallelism = new IterativeParallelism();
+
+        System.out.printf("elements=%d threads=%d rounds=%d%n", elements, threads, rounds);
+        compare("maximum int", rounds,
+                () -> parallelism.maximum(threads, ints),
+                () -> parallelism.maximum(threads, boxedInts, Comparator.naturalOrder()));
+        compare("sum int", rounds,
+                () -> parallelism.sum(threads, ints),
+                () -> parallelism.mapReduce(threads, boxedInts, Integer::longValue, 0L, Long::sum));
+        compare("count int", rounds,
+                () -> parallelism.count(threads, ints, v -> (v & 1) == 0),
+                () -> parallelism.mapReduce(threads, boxedInts, v -> (v & 1) == 0 ? 1 : 0, 0, Integer::sum));
+        compare("sum double", rounds,
+                () -> parallelism.sum(threads, doubles),
+                () -> parallelism.reduce(threads, boxedDoubles, 0.0, Double::sum));
+    }
+
+    private static void compare(String name, int rounds, Task primitive, Task boxed) throws InterruptedException {
+        final long[] primitiveTimes = measure(rounds, primitive);
+        final long[] boxedTimes = measure(rounds, boxed);
+        System.out.printf("%-12s primitive best=%7.2fms median=%7.2fms  boxed best=%7.2fms median=%7.2fms  speedup=%.1fx%n",
+                name, primitiveTimes[0] / 1e6, primitiveTimes[rounds / 2] / 1e6,
+                boxedTimes[0] / 1e6, boxedTimes[rounds / 2] / 1e6,
+                (double) boxedTimes[rounds / 2] / primitiveTimes[rounds / 2]);
+    }
+
+    // sorted times of rounds runs, after rounds warm-up runs
+    private static long[] measure(int rounds, Task task) throws InterruptedException {
+        final long[] times = new long[rounds];
+        Object sink = null;
+        for (int i = -rounds; i < rounds; i++) {
+            final long start = System.nanoTime();
+            sink = task.run();
+            if (i >= 0) {
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        Objects.requireNonNull(sink);
+        Arrays.sort(times);
+        return times;
+    }
+}
@@ -0,0 +1,296 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Downloader decorator which caches documents: a bounded LRU in memory and, optionally, links of pages on disk.
+// The disk tier is cut down to diskCapacity files after every diskCapacity / 2 writes, so it never holds more than
+// 1.5 * diskCapacity: expired files are deleted and, if there are still too many, the oldest written ones.
+// Concurrent misses of the same url wait for a single download.
+// Failed downloads are not cached.
+public class CacheDownloader implements Downloader {
+    // temporary files older than this were left by a crashed process
+    private static final Duration TEMP_TIMEOUT = Duration.ofMinutes(10);
+
+    private final Downloader downloader;
+    private final int capacity;
+    private final Duration expiry;
+    // null if there is no disk tier
+    private final Path directory;
+    private final int diskCapacity;
+    // the directory is cleaned up after this many stores, so the cost of listing it is amortized
+    private final int cleanupPeriod;
+    private final AtomicInteger stored = new AtomicInteger();
+    private final AtomicBoolean cleaning = new AtomicBoolean();
+
+    private final Map<String, Entry> memory;
+    private final Map<String, CompletableFuture<Document>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    private static class Entry {
+        private final Document document;
+        private final long created;
+
+        Entry(Document document, long created) {
+            this.document = document;
+            this.created = created;
+        }
+    }
+
+    public CacheDownloader(Downloader downloader, int capacity, Duration expiry) {
+        this(downloader, capacity, expiry, null, 0);
+    }
+
+    // links of about diskCapacity pages are kept in directory, which may be shared by several crawls
+    public CacheDownloader(Downloader downloader, int capacity, Duration expiry, Path directory, int diskCapacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        if (directory != null && diskCapacity < 1) {
+            throw new IllegalArgumentException("diskCapacity must be >= 1");
+        }
+        this.downloader = downloader;
+        this.capacity = capacity;
+        this.expiry = expiry;
+        this.directory = directory;
+        this.diskCapacity = diskCapacity;
+        this.cleanupPeriod = Math.max(1, diskCapacity / 2);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CacheDownloader.this.capacity;
+            }
+        };
+        if (directory != null) {
+            cleanUp();
+        }
+    }
+
+    // deletes stale temporary files, expired files and then the oldest files until at most diskCapacity are left.
+    // Only one thread cleans up at a time, the others don't wait for it
+    private void cleanUp() {
+        if (!Files.isDirectory(directory) || !cleaning.compareAndSet(false, true)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            final Instant tempDeadline = Instant.now().minus(TEMP_TIMEOUT);
+            final List<Path> entries = new ArrayList<>();
+            final Map<Path, Long> written = new HashMap<>();
+            for (Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                try {
+                    final long modified = Files.getLastModifiedTime(file).toMillis();
+                    if (name.startsWith("links") && name.endsWith(".tmp")) {
+                        if (modified < tempDeadline.toEpochMilli()) {
+                            Files.deleteIfExists(file);
+                        }
+                    } else if (expired(modified)) {
+                        Files.deleteIfExists(file);
+                    } else {
+                        entries.add(file);
+                        written.put(file, modified);
+                    }
+                } catch (IOException ignored) {
+                    // removed or being written by another process
+                }
+            }
+            if (entries.size() > diskCapacity) {
+                entries.sort(Comparator.comparing(written::get));
+                for (Path file : entries.subList(0, entries.size() - diskCapacity)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {
+                        // removed next time
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // the files are removed next time
+        } finally {
+            cleaning.set(false);
+        }
+    }
+
+    @Override
+    public Document download(String url) throws IOException {
+        final Document cached = fromMemory(url);
+        if (cached != null) {
+            memoryHits.increment();
+            return cached;
+        }
+
+        final CompletableFuture<Document> future = new CompletableFuture<>();
+        final CompletableFuture<Document> running = loading.putIfAbsent(url, future);
+        if (running != null) {
+            collapsed.increment();
+            return await(running);
+        }
+        try {
+            // the previous loader of the url may have finished between fromMemory and putIfAbsent
+            Document document = fromMemory(url);
+            if (document != null) {
+                memoryHits.increment();
+            } else {
+                document = load(url);
+                synchronized (memory) {
+                    memory.put(url, new Entry(document, System.currentTimeMillis()));
+                }
+            }
+            future.complete(document);
+            return document;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(url);
+        }
+    }
+
+    private Document fromMemory(String url) {
+        synchronized (memory) {
+            final Entry entry = memory.get(url);
+            if (entry == null) {
+                return null;
+            }
+            if (expired(entry.created)) {
+                memory.remove(url);
+                return null;
+            }
+            return entry.document;
+        }
+    }
+
+    private boolean expired(long created) {
+        return expiry != null && System.currentTimeMillis() - created > expiry.toMillis();
+    }
+
+    private static Document await(CompletableFuture<Document> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for download", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Document load(String url) throws IOException {
+        if (directory != null) {
+            final Path file = file(url);
+            if (Files.exists(file) && !expired(Files.getLastModifiedTime(file).toMillis())) {
+                try {
+                    final List<String> links = Files.readAllLines(file, StandardCharsets.UTF_8);
+                    // first line is the url itself, to tell apart urls with the same hash
+                    if (!links.isEmpty() && links.get(0).equals(url)) {
+                        diskHits.increment();
+                        final List<String> cachedLinks = List.copyOf(links.subList(1, links.size()));
+                        return () -> cachedLinks;
+                    }
+                } catch (IOException ignored) {
+                    // broken cache file, download again
+                }
+            }
+        }
+        misses.increment();
+        final Document document = downloader.download(url);
+        if (directory == null) {
+            return document;
+        }
+        // links are extracted right away, so that every downloaded page gets to the disk tier
+        final List<String> links;
+        try {
+            links = List.copyOf(document.extractLinks());
+        } catch (IOException e) {
+            // not cached, the error is reported again when the crawler extracts links
+            return document;
+        }
+        store(url, links);
+        return () -> links;
+    }
+
+    private Path file(String url) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return directory.resolve(name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is supported by every Java platform", e);
+        }
+    }
+
+    // written to a temporary file and moved, so readers never see a half-written entry
+    private void store(String url, List<String> links) {
+        try {
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempFile(directory, "links", ".tmp");
+            try {
+                Files.write(temp, Stream.concat(Stream.of(url), links.stream()).collect(Collectors.toList()),
+                        StandardCharsets.UTF_8);
+                Files.move(temp, file(url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException ignored) {
+            // the disk tier is only an optimization, the page is downloaded again next time
+            return;
+        }
+        if (stored.incrementAndGet() % cleanupPeriod == 0) {
+            cleanUp();
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // requests which waited for a download started by another thread
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+}
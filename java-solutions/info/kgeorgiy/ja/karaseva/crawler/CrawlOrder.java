@@ -0,0 +1,61 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.ToDoubleFunction;
+
+// order in which urls of one BFS level are handed to downloaders. Levels themselves always go from the shallowest
+// to the deepest, so limited download capacity is first spent on shallow pages whatever order is chosen
+@FunctionalInterface
+public interface CrawlOrder {
+    // use unordered() instead; a constant so that unordered() is always the same object
+    CrawlOrder UNORDERED = level -> level;
+
+    List<String> order(List<String> level);
+
+    // urls in the order the crawl state keeps them
+    static CrawlOrder unordered() {
+        return UNORDERED;
+    }
+
+    // one url of every host in turn, so a host with many links does not delay the others
+    static CrawlOrder roundRobinHosts() {
+        return level -> {
+            final Map<String, Queue<String>> byHost = new LinkedHashMap<>();
+            for (String url : level) {
+                String host;
+                try {
+                    host = URLUtils.getHost(url);
+                } catch (MalformedURLException e) {
+                    host = "";
+                }
+                byHost.computeIfAbsent(host, h -> new ArrayDeque<>()).add(url);
+            }
+            final List<String> result = new ArrayList<>(level.size());
+            while (!byHost.isEmpty()) {
+                byHost.values().removeIf(urls -> {
+                    result.add(urls.poll());
+                    return urls.isEmpty();
+                });
+            }
+            return result;
+        };
+    }
+
+    // urls with higher score first
+    static CrawlOrder byScore(ToDoubleFunction<String> score) {
+        return level -> {
+            final List<String> result = new ArrayList<>(level);
+            result.sort(Comparator.comparingDouble(score).reversed());
+            return result;
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+// state of one crawl: visited urls, current and next BFS level, downloaded pages and errors.
+// per-url methods are called concurrently from crawler threads, level methods only from the crawling thread
+interface CrawlState extends Closeable {
+    // returns remaining depth of the current level (depth for a new crawl, less for a resumed one)
+    int start(String url, int depth) throws IOException;
+
+    // calls action for every url of the current level that is not finished yet, in the given order if possible
+    void forEachInLevel(CrawlOrder order, Consumer<String> action) throws IOException;
+
+    void downloaded(String url);
+
+    void failed(String url, IOException e);
+
+    // adds links that were not visited before to the next level
+    void addLinks(List<String> links);
+
+    // called once per url of the level after it is downloaded and its links are added
+    void finish(String url);
+
+    // makes the next level current, returns false if there is nothing to crawl there
+    boolean nextLevel(int remaining) throws IOException;
+
+    Result result() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
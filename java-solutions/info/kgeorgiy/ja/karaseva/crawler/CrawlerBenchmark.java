@@ -0,0 +1,83 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Objects;
+
+// runs WebCrawler over a SyntheticDownloader and reports pages/sec, wall time, peak threads and peak heap.
+// Usage: CrawlerBenchmark [fixed|virtual [pages [fanOut [hosts [latencyMillis [latencySpread [errorRate
+//        [depth [downloaders [extractors [perHost]]]]]]]]]]]
+// for "virtual" mode downloaders is the limit of concurrent downloads and extractors is ignored.
+// The default depth is enough to reach almost every page of the default graph
+public class CrawlerBenchmark {
+    private static final long SEED = 2021;
+    private static final String[] DEFAULTS = {"fixed", "100000", "10", "50", "5", "4", "0.01", "10", "64", "4", "8"};
+
+    public static void main(String[] args) {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("arguments can not be null");
+            return;
+        }
+        if (args.length > DEFAULTS.length) {
+            System.err.println("expect at most " + DEFAULTS.length + " arguments");
+            return;
+        }
+        final String[] values = DEFAULTS.clone();
+        System.arraycopy(args, 0, values, 0, args.length);
+
+        final String mode = values[0];
+        if (!mode.equals("fixed") && !mode.equals("virtual")) {
+            System.err.println("unknown mode: " + mode);
+            return;
+        }
+        final int pages, fanOut, hosts, depth, downloaders, extractors, perHost;
+        final double latency, spread, errorRate;
+        try {
+            pages = Integer.parseInt(values[1]);
+            fanOut = Integer.parseInt(values[2]);
+            hosts = Integer.parseInt(values[3]);
+            latency = Double.parseDouble(values[4]);
+            spread = Double.parseDouble(values[5]);
+            errorRate = Double.parseDouble(values[6]);
+            depth = Integer.parseInt(values[7]);
+            downloaders = Integer.parseInt(values[8]);
+            extractors = Integer.parseInt(values[9]);
+            perHost = Integer.parseInt(values[10]);
+        } catch (NumberFormatException e) {
+            System.err.println("isn't correct number: " + e.getMessage());
+            return;
+        }
+
+        final SyntheticDownloader downloader = new SyntheticDownloader(SEED, pages, fanOut, hosts, latency, spread, errorRate);
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        final long start = System.nanoTime();
+        final Result result;
+        try (WebCrawler crawler = mode.equals("fixed")
+                ? new WebCrawler(downloader, downloaders, extractors, perHost)
+                : WebCrawler.withVirtualThreads(downloader, downloaders, perHost)) {
+            result = crawler.download(downloader.url(0), depth);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        System.out.printf("mode=%s pages=%d fanOut=%d hosts=%d latency=%.1fms spread=%.1f errorRate=%.3f depth=%d "
+                        + "downloaders=%d extractors=%d perHost=%d%n",
+                mode, pages, fanOut, hosts, latency, spread, errorRate, depth, downloaders, extractors, perHost);
+        final int reached = result.getDownloaded().size() + result.getErrors().size();
+        System.out.printf("downloaded=%d errors=%d reached=%.1f%% wall=%.2fs pages/sec=%.1f peakThreads=%d peakHeap=%.1fMB%n",
+                result.getDownloaded().size(), result.getErrors().size(), 100.0 * reached / pages, seconds,
+                result.getDownloaded().size() / seconds, threads.getPeakThreadCount(), peakHeap / 1048576.0);
+    }
+}
@@ -0,0 +1,233 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// counters of a WebCrawler. Updates are LongAdder/atomic increments, everything else is computed when read.
+// Can be registered in the platform MBean server and/or printed to System.err periodically
+public class CrawlerMetrics implements CrawlerMetricsMBean {
+    // latency bucket i holds downloads of [2^(i-1), 2^i) milliseconds, the last one everything longer
+    private static final int BUCKETS = 18;
+    // hosts seen after this many are counted together, so the metrics stay bounded however many hosts are crawled
+    private static final int MAX_HOSTS = 1024;
+    private static final String OTHER_HOSTS = "(other hosts)";
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final long started = System.nanoTime();
+    private final LongAdder pages = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final Host otherHosts = new Host();
+    private final Pool loaders = new Pool();
+    private final Pool extractors = new Pool();
+    private final LongAdder extractions = new LongAdder();
+    private final LongAdder extractionNanos = new LongAdder();
+
+    private ObjectName name;
+    private ScheduledExecutorService logger;
+
+    static class Pool {
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+
+        Runnable wrap(Runnable task) {
+            queued.incrementAndGet();
+            return () -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            };
+        }
+    }
+
+    static class Host {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+
+        void downloaded(long nanos) {
+            final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            latency.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += latency.get(i);
+            }
+            return count;
+        }
+
+        // bounds of the bucket containing the quantile: "< upper ms", or ">= lower ms" for the last bucket
+        String percentile(double quantile) {
+            final long target = (long) Math.ceil(count() * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += latency.get(i);
+                if (seen >= target && seen > 0) {
+                    return i < BUCKETS - 1 ? "< " + (1L << i) + " ms" : ">= " + (1L << (BUCKETS - 2)) + " ms";
+                }
+            }
+            return "n/a";
+        }
+    }
+
+    Pool loaders() {
+        return loaders;
+    }
+
+    Pool extractors() {
+        return extractors;
+    }
+
+    // the check of the size is racy, so the map can exceed MAX_HOSTS by the number of crawling threads
+    Host host(String host) {
+        final Host existing = hosts.get(host);
+        if (existing != null) {
+            return existing;
+        }
+        return hosts.size() < MAX_HOSTS ? hosts.computeIfAbsent(host, h -> new Host()) : otherHosts;
+    }
+
+    void downloaded(Host host, long nanos) {
+        pages.increment();
+        host.downloaded(nanos);
+    }
+
+    void failed(Host host, long nanos, Exception e) {
+        host.downloaded(nanos);
+        failed(e);
+    }
+
+    void failed(Exception e) {
+        errors.computeIfAbsent(e.getClass().getName(), type -> new LongAdder()).increment();
+    }
+
+    void extracted(long nanos) {
+        extractions.increment();
+        extractionNanos.add(nanos);
+    }
+
+    // registers this object in the platform MBean server
+    public synchronized void register() throws JMException {
+        if (name == null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName(getClass().getPackageName() + ":type=WebCrawler,id=" + INSTANCES.incrementAndGet());
+            server.registerMBean(this, name);
+        }
+    }
+
+    public synchronized void startLogging(Duration period) {
+        if (logger == null) {
+            logger = Executors.newSingleThreadScheduledExecutor(task -> {
+                final Thread thread = new Thread(task, "crawler-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.scheduleAtFixedRate(() -> System.err.println(summary()),
+                    period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void close() {
+        if (logger != null) {
+            logger.shutdownNow();
+            logger = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ignored) {
+            }
+            name = null;
+        }
+    }
+
+    public String summary() {
+        return String.format("pages: %d (%.1f/s), errors: %s, loaders: %d active %d queued, "
+                        + "extractors: %d active %d queued, extraction: %.2f ms avg%n  %s",
+                getPagesDownloaded(), getPagesPerSecond(), getErrorsByType(),
+                getLoadersActive(), getLoadersQueued(), getExtractorsActive(), getExtractorsQueued(),
+                getAverageExtractionMillis(), String.join(System.lineSeparator() + "  ", getHosts()));
+    }
+
+    @Override
+    public long getPagesDownloaded() {
+        return pages.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        final double seconds = (System.nanoTime() - started) / 1e9;
+        return seconds > 0 ? pages.sum() / seconds : 0;
+    }
+
+    // errors of downloads and of link extraction
+    @Override
+    public long getErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByType() {
+        final Map<String, Long> result = new TreeMap<>();
+        errors.forEach((type, count) -> result.put(type, count.sum()));
+        return result;
+    }
+
+    @Override
+    public int getLoadersActive() {
+        return loaders.active.get();
+    }
+
+    @Override
+    public int getLoadersQueued() {
+        return loaders.queued.get();
+    }
+
+    @Override
+    public int getExtractorsActive() {
+        return extractors.active.get();
+    }
+
+    @Override
+    public int getExtractorsQueued() {
+        return extractors.queued.get();
+    }
+
+    @Override
+    public double getAverageExtractionMillis() {
+        final long count = extractions.sum();
+        return count > 0 ? extractionNanos.sum() / 1e6 / count : 0;
+    }
+
+    @Override
+    public String[] getHosts() {
+        final Map<String, Host> sorted = new TreeMap<>(hosts);
+        if (otherHosts.count() > 0 || otherHosts.inFlight.get() > 0 || otherHosts.queued.get() > 0) {
+            sorted.put(OTHER_HOSTS, otherHosts);
+        }
+        return sorted.entrySet().stream()
+                .map(entry -> String.format("%s: %d in flight, %d queued, %d downloads, p50 %s, p99 %s",
+                        entry.getKey(), entry.getValue().inFlight.get(), entry.getValue().queued.get(),
+                        entry.getValue().count(), entry.getValue().percentile(0.5),
+                        entry.getValue().percentile(0.99)))
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,28 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import java.util.Map;
+
+// JMX view of CrawlerMetrics
+public interface CrawlerMetricsMBean {
+    long getPagesDownloaded();
+
+    double getPagesPerSecond();
+
+    // errors of downloads and of link extraction
+    long getErrors();
+
+    Map<String, Long> getErrorsByType();
+
+    int getLoadersActive();
+
+    int getLoadersQueued();
+
+    int getExtractorsActive();
+
+    int getExtractorsQueued();
+
+    double getAverageExtractionMillis();
+
+    // one line per host: in flight, queued, downloads and latency percentiles
+    String[] getHosts();
+}
@@ -0,0 +1,263 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// crawl state kept in a directory, so the heap does not grow with the crawl and an interrupted crawl can be resumed:
+//   level-<remaining>.txt - urls of a BFS level, one per line (current one and the next one being filled)
+//   downloaded.log, errors.log - append-only logs of finished urls
+//   visited.idx - visited urls, rebuilt from the files above on resume
+//   finished.idx - urls of the current level which are already done
+//   checkpoint - root url, depth and remaining depth of the current level
+// the .idx files are memory-mapped, so they are cleared in place instead of being deleted
+// logs are flushed before a url is marked finished, so after a crash every unfinished url is crawled again
+class DiskCrawlState implements CrawlState {
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String DOWNLOADED = "downloaded.log";
+    private static final String ERRORS = "errors.log";
+    private static final String VISITED = "visited.idx";
+    private static final String FINISHED = "finished.idx";
+
+    private final Path directory;
+    private MappedHashSet visited;
+    private MappedHashSet finished;
+    private Writer nextLevel;
+    private Writer downloadedLog;
+    private Writer errorsLog;
+    private String url;
+    private int depth;
+    private int remaining;
+
+    DiskCrawlState(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    private Path level(int remaining) {
+        return directory.resolve("level-" + remaining + ".txt");
+    }
+
+    @Override
+    public int start(String url, int depth) throws IOException {
+        this.url = url;
+        this.depth = depth;
+        final Properties checkpoint = readCheckpoint();
+        if (url.equals(checkpoint.getProperty("url"))
+                && String.valueOf(depth).equals(checkpoint.getProperty("depth"))
+                && Integer.parseInt(checkpoint.getProperty("remaining", "0")) > 0) {
+            remaining = Integer.parseInt(checkpoint.getProperty("remaining"));
+            resume();
+        } else {
+            remaining = depth;
+            reset();
+        }
+        nextLevel = append(level(remaining - 1));
+        downloadedLog = append(directory.resolve(DOWNLOADED));
+        errorsLog = append(directory.resolve(ERRORS));
+        return remaining;
+    }
+
+    private void reset() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                if (isStateFile(name) && !name.equals(VISITED) && !name.equals(FINISHED)) {
+                    Files.delete(file);
+                }
+            }
+        }
+        visited = new MappedHashSet(directory.resolve(VISITED), INITIAL_CAPACITY);
+        visited.clear();
+        finished = new MappedHashSet(directory.resolve(FINISHED), INITIAL_CAPACITY);
+        finished.clear();
+        visited.add(url);
+        Files.writeString(level(remaining), url + System.lineSeparator(), StandardCharsets.UTF_8);
+        writeCheckpoint();
+    }
+
+    // urls that were visited but not written anywhere before a crash are forgotten here and found again
+    // when the pages linking to them are re-extracted
+    private void resume() throws IOException {
+        visited = new MappedHashSet(directory.resolve(VISITED), INITIAL_CAPACITY);
+        visited.clear();
+        finished = new MappedHashSet(directory.resolve(FINISHED), INITIAL_CAPACITY);
+        visited.add(url);
+        forEachLine(directory.resolve(DOWNLOADED), visited::add);
+        forEachLine(directory.resolve(ERRORS), line -> visited.add(line.substring(0, line.indexOf('\t'))));
+        forEachLine(level(remaining), visited::add);
+        forEachLine(level(remaining - 1), visited::add);
+    }
+
+    private static boolean isStateFile(String name) {
+        return name.startsWith(CHECKPOINT) || name.equals(DOWNLOADED) || name.equals(ERRORS)
+                || name.startsWith(VISITED) || name.startsWith(FINISHED) || name.matches("level-\\d+\\.txt");
+    }
+
+    private static Writer append(Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void forEachLine(Path file, Consumer<String> action) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    action.accept(line);
+                }
+            }
+        }
+    }
+
+    private Properties readCheckpoint() throws IOException {
+        final Properties checkpoint = new Properties();
+        final Path file = directory.resolve(CHECKPOINT);
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                checkpoint.load(reader);
+            }
+        }
+        return checkpoint;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        final Properties checkpoint = new Properties();
+        checkpoint.setProperty("url", url);
+        checkpoint.setProperty("depth", String.valueOf(depth));
+        checkpoint.setProperty("remaining", String.valueOf(remaining));
+        final Path temp = directory.resolve(CHECKPOINT + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, null);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // the level is streamed from disk as it was written, so order is not applied;
+    // WebCrawler accepts only CrawlOrder.unordered() with a state directory
+    @Override
+    public void forEachInLevel(CrawlOrder order, Consumer<String> action) throws IOException {
+        forEachLine(level(remaining), line -> {
+            if (!finished.contains(line)) {
+                action.accept(line);
+            }
+        });
+    }
+
+    private static void write(Writer writer, String line) {
+        synchronized (writer) {
+            try {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void downloaded(String url) {
+        write(downloadedLog, url);
+    }
+
+    @Override
+    public void failed(String url, IOException e) {
+        final String message = e.getClass().getName() + ": " + e.getMessage();
+        write(errorsLog, url + "\t" + message.replaceAll("[\t\r\n]", " "));
+    }
+
+    @Override
+    public void addLinks(List<String> links) {
+        final StringBuilder lines = new StringBuilder();
+        for (String link : links) {
+            if (visited.add(link)) {
+                lines.append(link).append(System.lineSeparator());
+            }
+        }
+        if (lines.length() > 0) {
+            synchronized (nextLevel) {
+                try {
+                    nextLevel.write(lines.toString());
+                    nextLevel.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void finish(String url) {
+        finished.add(url);
+    }
+
+    @Override
+    public boolean nextLevel(int remaining) throws IOException {
+        nextLevel.close();
+        final int previous = this.remaining;
+        final boolean empty = remaining == 0 || !Files.exists(level(remaining)) || Files.size(level(remaining)) == 0;
+        this.remaining = empty ? 0 : remaining;
+        writeCheckpoint();
+        visited.force();
+        // urls of the new level are not in the old one, so a crash before the clear only leaves harmless entries
+        finished.clear();
+        Files.deleteIfExists(level(previous));
+        if (empty) {
+            Files.deleteIfExists(level(remaining));
+            return false;
+        }
+        nextLevel = append(level(remaining - 1));
+        return true;
+    }
+
+    // the Result itself has to be on the heap; pages downloaded again after a crash are counted once
+    @Override
+    public Result result() throws IOException {
+        final Set<String> downloaded = new LinkedHashSet<>();
+        forEachLine(directory.resolve(DOWNLOADED), downloaded::add);
+        final Map<String, IOException> errors = new HashMap<>();
+        forEachLine(directory.resolve(ERRORS), line -> {
+            final String url = line.substring(0, line.indexOf('\t'));
+            if (!downloaded.contains(url)) {
+                errors.put(url, new IOException(line.substring(line.indexOf('\t') + 1)));
+            }
+        });
+        return new Result(new ArrayList<>(downloaded), errors);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Writer writer : new Writer[]{nextLevel, downloadedLog, errorsLog}) {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        if (visited != null) {
+            visited.close();
+        }
+        if (finished != null) {
+            finished.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// set of strings kept as 64-bit hashes in a memory-mapped open addressing table, so it lives in the page cache
+// instead of the heap. Two urls with the same 64-bit hash are treated as equal; for a crawl of 10^7 urls
+// the chance of that is about 10^-5.
+// The file is never deleted or replaced while it is mapped (Windows forbids both until the mapping is collected):
+// the table is cleared in place and grows by mapping a larger region of the same file.
+// File layout: size, capacity, capacity slots of the table, then the scratch area used by the last grow
+class MappedHashSet implements Closeable {
+    private static final int HEADER = 2;
+    // a MappedByteBuffer can not be larger than 2 GB, and the scratch area takes half of the capacity
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private LongBuffer table;
+    private int capacity;
+    private int size;
+
+    // opens the table stored in file, or creates an empty one with initialCapacity slots
+    MappedHashSet(Path file, int initialCapacity) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(Math.max(channel.size() / Long.BYTES, HEADER));
+        final long stored = table.get(1);
+        if (Long.bitCount(stored) == 1 && HEADER + stored <= table.limit()) {
+            capacity = (int) stored;
+            size = (int) table.get(0);
+        } else {
+            // a new file, or one written in another format
+            capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+            map(HEADER + capacity);
+            clear();
+            table.put(1, capacity);
+        }
+    }
+
+    // maps the first slots longs of the file, extending it if needed
+    private void map(long slots) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slots * Long.BYTES);
+        table = buffer.asLongBuffer();
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // 0 marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    private int find(long hash) {
+        int index = (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+        while (table.get(index + HEADER) != 0 && table.get(index + HEADER) != hash) {
+            index = (index + 1) & (capacity - 1);
+        }
+        return index + HEADER;
+    }
+
+    public synchronized boolean contains(String value) {
+        return table.get(find(hash(value))) != 0;
+    }
+
+    public synchronized boolean add(String value) {
+        final long hash = hash(value);
+        final int index = find(hash);
+        if (table.get(index) != 0) {
+            return false;
+        }
+        table.put(index, hash);
+        table.put(0, ++size);
+        if (size * 2L > capacity) {
+            grow();
+        }
+        return true;
+    }
+
+    // old slots are copied to the scratch area behind the doubled table and inserted back from there.
+    // A crash in the middle can only lose elements, never invent them: a slot holds either 0 or a real hash
+    private void grow() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("MappedHashSet is full: " + size + " elements");
+        }
+        try {
+            final int oldCapacity = capacity;
+            final int scratch = HEADER + oldCapacity * 2;
+            map(scratch + oldCapacity);
+            for (int i = 0; i < oldCapacity; i++) {
+                table.put(scratch + i, table.get(HEADER + i));
+                table.put(HEADER + i, 0);
+                // may hold the scratch area of the previous grow
+                table.put(HEADER + oldCapacity + i, 0);
+            }
+            capacity = oldCapacity * 2;
+            table.put(1, capacity);
+            for (int i = scratch; i < scratch + oldCapacity; i++) {
+                if (table.get(i) != 0) {
+                    table.put(find(table.get(i)), table.get(i));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // removes all elements, keeping the capacity
+    public synchronized void clear() {
+        for (int i = HEADER; i < HEADER + capacity; i++) {
+            table.put(i, 0);
+        }
+        size = 0;
+        table.put(0, 0);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
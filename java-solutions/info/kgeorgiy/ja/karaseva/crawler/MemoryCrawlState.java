@@ -0,0 +1,67 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+class MemoryCrawlState implements CrawlState {
+    private final Set<String> downloaded = ConcurrentHashMap.newKeySet();
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private final Map<String, IOException> errors = new ConcurrentHashMap<>();
+    private Set<String> level;
+    private Set<String> nextLevel;
+
+    @Override
+    public int start(String url, int depth) {
+        visited.add(url);
+        level = Set.of(url);
+        nextLevel = ConcurrentHashMap.newKeySet();
+        return depth;
+    }
+
+    @Override
+    public void forEachInLevel(CrawlOrder order, Consumer<String> action) {
+        order.order(new ArrayList<>(level)).forEach(action);
+    }
+
+    @Override
+    public void downloaded(String url) {
+        downloaded.add(url);
+    }
+
+    @Override
+    public void failed(String url, IOException e) {
+        errors.put(url, e);
+    }
+
+    @Override
+    public void addLinks(List<String> links) {
+        for (String link : links) {
+            if (visited.add(link)) {
+                nextLevel.add(link);
+            }
+        }
+    }
+
+    @Override
+    public void finish(String url) {
+    }
+
+    @Override
+    public boolean nextLevel(int remaining) {
+        level = nextLevel;
+        nextLevel = ConcurrentHashMap.newKeySet();
+        return remaining > 0 && !level.isEmpty();
+    }
+
+    @Override
+    public Result result() {
+        return new Result(new ArrayList<>(downloaded), errors);
+    }
+}
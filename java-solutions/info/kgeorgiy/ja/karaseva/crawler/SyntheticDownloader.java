@@ -0,0 +1,88 @@
+package info.kgeorgiy.ja.karaseva.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// in-process Downloader over a generated site graph, for reproducible crawler benchmarks without network.
+// Pages are http://host<h>.test/<i> for i in [0, pages); the links of a page, its host, the latency of its download
+// and whether the download fails depend only on seed and the page number.
+// Every host gets its own mean latency, from meanLatencyMillis / latencySpread to meanLatencyMillis * latencySpread,
+// and its own error rate, from 0 to 2 * errorRate; latency of a single download is exponentially distributed
+public class SyntheticDownloader implements Downloader {
+    private final long seed;
+    private final int pages;
+    private final int fanOut;
+    private final int hosts;
+    private final double[] hostLatencyMillis;
+    private final double[] hostErrorRate;
+
+    public SyntheticDownloader(long seed, int pages, int fanOut, int hosts,
+                               double meanLatencyMillis, double latencySpread, double errorRate) {
+        if (pages < 1 || fanOut < 0 || hosts < 1) {
+            throw new IllegalArgumentException("expected pages >= 1, fanOut >= 0, hosts >= 1");
+        }
+        if (latencySpread < 1) {
+            throw new IllegalArgumentException("latencySpread must be >= 1");
+        }
+        this.seed = seed;
+        this.pages = pages;
+        this.fanOut = fanOut;
+        this.hosts = hosts;
+        this.hostLatencyMillis = new double[hosts];
+        this.hostErrorRate = new double[hosts];
+        final SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < hosts; i++) {
+            hostLatencyMillis[i] = meanLatencyMillis * Math.pow(latencySpread, random.nextDouble(-1, 1));
+            hostErrorRate[i] = Math.min(1, errorRate * random.nextDouble(0, 2));
+        }
+    }
+
+    public String url(int page) {
+        return "http://host" + host(page) + ".test/" + page;
+    }
+
+    private int host(int page) {
+        return new SplittableRandom(seed ^ page).nextInt(hosts);
+    }
+
+    private int page(String url) throws IOException {
+        try {
+            final int page = Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+            if (page < 0 || page >= pages || !url.equals(url(page))) {
+                throw new IOException("Not found: " + url);
+            }
+            return page;
+        } catch (NumberFormatException e) {
+            throw new IOException("Not found: " + url, e);
+        }
+    }
+
+    @Override
+    public Document download(String url) throws IOException {
+        final int page = page(url);
+        final int host = host(page);
+        // a separate stream from the one that chooses the host
+        final SplittableRandom random = new SplittableRandom(Long.rotateLeft(seed, 17) ^ page);
+        final double latency = -hostLatencyMillis[host] * Math.log(1 - random.nextDouble());
+        try {
+            TimeUnit.MICROSECONDS.sleep((long) (latency * 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, e);
+        }
+        if (random.nextDouble() < hostErrorRate[host]) {
+            throw new IOException("Synthetic error for " + url);
+        }
+        final List<String> links = new ArrayList<>(fanOut);
+        for (int i = 0; i < fanOut; i++) {
+            links.add(url(random.nextInt(pages)));
+        }
+        return () -> links;
+    }
+}
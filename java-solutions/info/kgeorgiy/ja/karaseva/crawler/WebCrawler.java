@@ -3,76 +3,280 @@ package info.kgeorgiy.ja.karaseva.crawler;
 import info.kgeorgiy.java.advanced.crawler.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
 
-public class WebCrawler implements Crawler {
+public class WebCrawler implements AdvancedCrawler {
+    // bounds the number of urls of a level which are queued or being processed at once
+    private static final int IN_FLIGHT_LIMIT = 4096;
 
     private final Downloader downloader;
 
     private final ExecutorService loaders;
     private final ExecutorService extractors;
+    // limits concurrent downloads when loaders start a thread per task, null if the loaders pool limits them
+    private final Semaphore downloads;
+
+    private final int perHost;
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final CrawlerMetrics metrics = new CrawlerMetrics();
+
+    // directory with crawl state, null if the state is kept in memory
+    private final Path stateDirectory;
 
     public WebCrawler(Downloader downloader, int downloaders, int extractors, int perHost) {
+        this(downloader, downloaders, extractors, perHost, null);
+    }
+
+    // keeps the frontier and visited urls in stateDirectory; download() resumes a crawl of the same url and depth
+    // which was interrupted before it finished
+    public WebCrawler(Downloader downloader, int downloaders, int extractors, int perHost, Path stateDirectory) {
+        this(downloader, Executors.newFixedThreadPool(downloaders), Executors.newFixedThreadPool(extractors),
+                null, perHost, stateDirectory);
+    }
+
+    private WebCrawler(Downloader downloader, ExecutorService loaders, ExecutorService extractors,
+                       Semaphore downloads, int perHost, Path stateDirectory) {
+        if (perHost < 1) {
+            throw new IllegalArgumentException("perHost must be >= 1");
+        }
         this.downloader = downloader;
-        this.loaders = Executors.newFixedThreadPool(downloaders);
-        this.extractors = Executors.newFixedThreadPool(extractors);
+        this.loaders = loaders;
+        this.extractors = extractors;
+        this.downloads = downloads;
+        this.perHost = perHost;
+        this.stateDirectory = stateDirectory;
+    }
+
+    // every download runs in its own virtual thread, at most `downloads` of them at once,
+    // and links are extracted by a pool with a thread per processor.
+    // On JDKs without virtual threads (before 21) downloads run in a fixed pool of `downloads` platform threads,
+    // which gives the same bound without threads blocked on a semaphore
+    public static WebCrawler withVirtualThreads(Downloader downloader, int downloads, int perHost) {
+        if (downloads < 1) {
+            throw new IllegalArgumentException("downloads must be >= 1");
+        }
+        final ExecutorService extractors = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        return virtual != null
+                ? new WebCrawler(downloader, virtual, extractors, new Semaphore(downloads), perHost, null)
+                : new WebCrawler(downloader, Executors.newFixedThreadPool(downloads), extractors, null, perHost, null);
+    }
+
+    // null if the JDK has no virtual threads
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // at most perHost downloads of the host are submitted to loaders, the rest wait here without holding a thread.
+    // A queue is changed only inside hosts.compute and removes itself when it becomes idle,
+    // so hosts holds only the hosts which have work
+    private class HostQueue {
+        private final String host;
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private final CrawlerMetrics.Host hostMetrics;
+        private int running = 0;
+
+        HostQueue(String host) {
+            this.host = host;
+            hostMetrics = metrics.host(host);
+        }
+
+        HostQueue add(Runnable task) {
+            if (running < perHost) {
+                running++;
+                submit(task);
+            } else {
+                waiting.add(task);
+                hostMetrics.queued.incrementAndGet();
+            }
+            return this;
+        }
+
+        private HostQueue finish() {
+            Runnable next = waiting.poll();
+            if (next != null) {
+                hostMetrics.queued.decrementAndGet();
+                submit(next);
+                return this;
+            }
+            return --running == 0 ? null : this;
+        }
+
+        private void submit(Runnable task) {
+            loaders.execute(metrics.loaders().wrap(() -> {
+                hostMetrics.inFlight.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    hostMetrics.inFlight.decrementAndGet();
+                    hosts.compute(host, (h, queue) -> finish());
+                }
+            }));
+        }
+    }
+
+    public CrawlerMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public Result download(String url, int depth) {
+        return download(url, depth, link -> true, CrawlOrder.unordered());
+    }
+
+    // only pages of the given hosts are downloaded, other links are dropped before they are queued
+    @Override
+    public Result download(String url, int depth, List<String> hosts) {
+        return download(url, depth, hosts, CrawlOrder.unordered());
+    }
+
+    // a crawler with a state directory streams levels from disk and supports only CrawlOrder.unordered()
+    public Result download(String url, int depth, List<String> hosts, CrawlOrder order) {
+        if (stateDirectory != null && order != CrawlOrder.unordered()) {
+            throw new IllegalArgumentException("only CrawlOrder.unordered() is supported with a state directory");
+        }
+        final Set<String> allowed = new HashSet<>(hosts);
+        return download(url, depth, link -> {
+            try {
+                return allowed.contains(URLUtils.getHost(link));
+            } catch (MalformedURLException e) {
+                return false;
+            }
+        }, order);
+    }
+
+    private Result download(String url, int depth, Predicate<String> inScope, CrawlOrder order) {
         if (depth < 1) {
             throw new IllegalArgumentException("depth must be >= 1");
         }
-        // :NOTE: either explain why you use concurrentskiplist or use more efficient ds
-        Set<String> downloaded = new ConcurrentSkipListSet<>();
-        Set<String> urls = new ConcurrentSkipListSet<>();
-        Map<String, IOException> errors = new ConcurrentHashMap<>();
-        Phaser phaser = new Phaser(1);
-        downloadLink(url, depth, downloaded, urls, errors, phaser);
-        phaser.arriveAndAwaitAdvance();
-        return new Result(new ArrayList<>(downloaded), errors);
+        if (!inScope.test(url)) {
+            return new Result(List.of(), Map.of());
+        }
+        try {
+            if (stateDirectory == null) {
+                return crawl(new MemoryCrawlState(), url, depth, inScope, order);
+            }
+            // the state directory can hold only one crawl
+            synchronized (stateDirectory) {
+                try (DiskCrawlState state = new DiskCrawlState(stateDirectory)) {
+                    return crawl(state, url, depth, inScope, order);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't access crawl state", e);
+        }
     }
 
-    private void downloadLink(String url, int depth, Set<String> downloaded, Set<String> urls,
-                              Map<String, IOException> errors, Phaser phaser) {
-        if (urls.add(url)) {
+    // crawls level by level, so every url is downloaded once and at the shallowest depth it appears on
+    private Result crawl(CrawlState state, String url, int depth, Predicate<String> inScope, CrawlOrder order)
+            throws IOException {
+        Semaphore inFlight = new Semaphore(IN_FLIGHT_LIMIT);
+        for (int remaining = state.start(url, depth); remaining > 0; remaining--) {
+            final boolean extract = remaining > 1;
+            state.forEachInLevel(order, link -> {
+                inFlight.acquireUninterruptibly();
+                downloadLink(link, extract, state, inScope, inFlight);
+            });
+            inFlight.acquireUninterruptibly(IN_FLIGHT_LIMIT);
+            inFlight.release(IN_FLIGHT_LIMIT);
+            if (!state.nextLevel(remaining - 1)) {
+                break;
+            }
+        }
+        return state.result();
+    }
+
+    // releases inFlight exactly once, after the page is downloaded and (if needed) its links are extracted
+    private void downloadLink(String url, boolean extract, CrawlState state, Predicate<String> inScope,
+                              Semaphore inFlight) {
+        final String host;
+        try {
+            host = URLUtils.getHost(url);
+        } catch (MalformedURLException e) {
+            state.failed(url, e);
+            finish(url, state, inFlight);
+            return;
+        }
+        final CrawlerMetrics.Host hostMetrics = metrics.host(host);
+        final Runnable task = () -> {
+            boolean extracting = false;
             try {
-                Document document = downloader.download(url);
-                downloaded.add(url);
-                if (depth > 1) {
-                    phaser.register();
-                    extractors.execute(() -> {
+                Document document = download(url, hostMetrics);
+                state.downloaded(url);
+                if (extract) {
+                    extractors.execute(metrics.extractors().wrap(() -> {
+                        final long start = System.nanoTime();
                         try {
-                            parseLinkFromDocument(document, depth - 1, downloaded, urls, errors, phaser);
+                            List<String> links = new ArrayList<>();
+                            for (String link : document.extractLinks()) {
+                                if (inScope.test(link)) {
+                                    links.add(link);
+                                }
+                            }
+                            state.addLinks(links);
                         } catch (IOException e) {
-                            errors.put(url, e);
+                            metrics.failed(e);
+                            state.failed(url, e);
                         } finally {
-                            phaser.arrive();
+                            metrics.extracted(System.nanoTime() - start);
+                            finish(url, state, inFlight);
                         }
-                    });
+                    }));
+                    extracting = true;
                 }
             } catch (IOException e) {
-                errors.put(url, e);
+                state.failed(url, e);
+            } finally {
+                if (!extracting) {
+                    finish(url, state, inFlight);
+                }
+            }
+        };
+        hosts.compute(host, (h, queue) -> (queue == null ? new HostQueue(h) : queue).add(task));
+    }
+
+    // a virtual thread waiting for a permit costs almost nothing, so it simply blocks here
+    private Document download(String url, CrawlerMetrics.Host hostMetrics) throws IOException {
+        if (downloads != null) {
+            downloads.acquireUninterruptibly();
+        }
+        final long start = System.nanoTime();
+        try {
+            Document document = downloader.download(url);
+            metrics.downloaded(hostMetrics, System.nanoTime() - start);
+            return document;
+        } catch (IOException | RuntimeException e) {
+            metrics.failed(hostMetrics, System.nanoTime() - start, e);
+            throw e;
+        } finally {
+            if (downloads != null) {
+                downloads.release();
             }
         }
     }
 
-    private void parseLinkFromDocument(Document document, int depth, Set<String> downloaded, Set<String> urls,
-                                       Map<String, IOException> errors, Phaser phaser) throws IOException {
-        document.extractLinks().forEach((link) -> {
-            phaser.register();
-            loaders.execute(() -> {
-                downloadLink(link, depth, downloaded, urls, errors, phaser);
-                phaser.arrive();
-            });
-        });
+    private static void finish(String url, CrawlState state, Semaphore inFlight) {
+        try {
+            state.finish(url);
+        } finally {
+            inFlight.release();
+        }
     }
 
     @Override
     public void close() {
         loaders.shutdownNow();
         extractors.shutdownNow();
+        metrics.close();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,306 @@
+package info.kgeorgiy.ja.karaseva.implementor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes class files of interface implementations directly, without generating sources and running javac.
+ * <p> Generated class is the same as compiled {@link Implementor} output:
+ * public class {@code <Interface>Impl} with default constructor, every method returns default value of its return type.
+ */
+class BytecodeGenerator {
+    /**
+     * Class file version of Java 11. Generated methods have no branches, so no stack map frames are needed.
+     */
+    private static final int VERSION = 55;
+
+    /**
+     * Access flags {@code ACC_PUBLIC | ACC_SUPER} of generated class.
+     */
+    private static final int CLASS_ACCESS = 0x0001 | 0x0020;
+
+    /**
+     * Tag of {@code CONSTANT_Utf8} constant pool entry.
+     */
+    private static final int UTF8 = 1;
+
+    /**
+     * Tag of {@code CONSTANT_Class} constant pool entry.
+     */
+    private static final int CLASS = 7;
+
+    /**
+     * Tag of {@code CONSTANT_NameAndType} constant pool entry.
+     */
+    private static final int NAME_AND_TYPE = 12;
+
+    /**
+     * Tag of {@code CONSTANT_Methodref} constant pool entry.
+     */
+    private static final int METHOD_REF = 10;
+
+    /**
+     * Constant pool entries by their content, in order of adding.
+     */
+    private final Map<List<Object>, Integer> constants = new LinkedHashMap<>();
+
+    /**
+     * Serialized constant pool.
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * Stream writing into {@link #pool}.
+     */
+    private final DataOutputStream poolWriter = new DataOutputStream(pool);
+
+    /**
+     * Create generator with empty constant pool. Every generator writes exactly one class.
+     */
+    private BytecodeGenerator() {
+    }
+
+    /**
+     * Generate class file of implementation of interface {@code token}.
+     *
+     * @param token realizable interface.
+     * @param name  binary name of generated class.
+     * @return bytes of class file.
+     */
+    static byte[] generate(final Class<?> token, final String name) {
+        try {
+            return new BytecodeGenerator().write(token, name);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Can't write to memory", e);
+        }
+    }
+
+    /**
+     * Write class file of implementation of interface {@code token}.
+     *
+     * @param token realizable interface.
+     * @param name  binary name of generated class.
+     * @return bytes of class file.
+     * @throws IOException never, all streams are in memory.
+     */
+    private byte[] write(final Class<?> token, final String name) throws IOException {
+        final int thisClass = classConstant(internalName(name));
+        final int superClass = classConstant("java/lang/Object");
+        final int superInterface = classConstant(internalName(token.getName()));
+        final int code = utf8("Code");
+
+        final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        final DataOutputStream methodsWriter = new DataOutputStream(methods);
+
+        final int objectInit = methodRef(superClass, "<init>", "()V");
+        // aload_0, invokespecial Object.<init>, return
+        writeMethod(methodsWriter, Modifier.PUBLIC, "<init>", "()V", code, 1, 1,
+                new byte[]{0x2a, (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xb1});
+        int methodCount = 1;
+
+        final Map<String, Method> unique = new LinkedHashMap<>();
+        for (final Method method : token.getMethods()) {
+            unique.putIfAbsent(method.getName() + descriptor(method), method);
+        }
+        for (final Map.Entry<String, Method> entry : unique.entrySet()) {
+            final Method method = entry.getValue();
+            final boolean isStatic = Modifier.isStatic(method.getModifiers());
+            int locals = isStatic ? 0 : 1;
+            for (final Class<?> parameter : method.getParameterTypes()) {
+                locals += parameter == long.class || parameter == double.class ? 2 : 1;
+            }
+            writeMethod(methodsWriter, Modifier.PUBLIC | (isStatic ? Modifier.STATIC : 0),
+                    method.getName(), descriptor(method), code, 2, locals, defaultReturn(method.getReturnType()));
+            methodCount++;
+        }
+
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final DataOutputStream writer = new DataOutputStream(result);
+        writer.writeInt(0xCAFEBABE);
+        writer.writeShort(0);
+        writer.writeShort(VERSION);
+        writer.writeShort(constants.size() + 1);
+        pool.writeTo(writer);
+        writer.writeShort(CLASS_ACCESS);
+        writer.writeShort(thisClass);
+        writer.writeShort(superClass);
+        writer.writeShort(1);
+        writer.writeShort(superInterface);
+        writer.writeShort(0);
+        writer.writeShort(methodCount);
+        methods.writeTo(writer);
+        writer.writeShort(0);
+        return result.toByteArray();
+    }
+
+    /**
+     * Write {@code method_info} structure with a single {@code Code} attribute.
+     *
+     * @param writer     stream to write into.
+     * @param access     access flags of the method.
+     * @param name       name of the method.
+     * @param descriptor descriptor of the method.
+     * @param code       constant pool index of {@code "Code"}.
+     * @param maxStack   maximum depth of operand stack.
+     * @param maxLocals  number of local variable slots.
+     * @param bytecode   instructions of the method.
+     * @throws IOException never, all streams are in memory.
+     */
+    private void writeMethod(final DataOutputStream writer, final int access, final String name,
+                             final String descriptor, final int code, final int maxStack, final int maxLocals,
+                             final byte[] bytecode) throws IOException {
+        writer.writeShort(access);
+        writer.writeShort(utf8(name));
+        writer.writeShort(utf8(descriptor));
+        writer.writeShort(1);
+        writer.writeShort(code);
+        writer.writeInt(12 + bytecode.length);
+        writer.writeShort(maxStack);
+        writer.writeShort(maxLocals);
+        writer.writeInt(bytecode.length);
+        writer.write(bytecode);
+        writer.writeShort(0);
+        writer.writeShort(0);
+    }
+
+    /**
+     * Return instructions returning default value of {@code returnType}, same values as in generated sources.
+     *
+     * @param returnType return type of the method.
+     * @return bytecode of method body.
+     */
+    private static byte[] defaultReturn(final Class<?> returnType) {
+        if (returnType == void.class) {
+            return new byte[]{(byte) 0xb1};
+        } else if (returnType == long.class) {
+            return new byte[]{0x09, (byte) 0xad};
+        } else if (returnType == float.class) {
+            return new byte[]{0x0b, (byte) 0xae};
+        } else if (returnType == double.class) {
+            return new byte[]{0x0e, (byte) 0xaf};
+        } else if (returnType.isPrimitive()) {
+            return new byte[]{0x03, (byte) 0xac};
+        } else {
+            return new byte[]{0x01, (byte) 0xb0};
+        }
+    }
+
+    /**
+     * Primitive types by their descriptors.
+     */
+    private static final Map<Class<?>, String> PRIMITIVES = new HashMap<>();
+
+    static {
+        final Class<?>[] types = {void.class, boolean.class, byte.class, char.class, short.class,
+                int.class, long.class, float.class, double.class};
+        final String[] descriptors = {"V", "Z", "B", "C", "S", "I", "J", "F", "D"};
+        for (int i = 0; i < types.length; i++) {
+            PRIMITIVES.put(types[i], descriptors[i]);
+        }
+    }
+
+    /**
+     * Return field descriptor of {@code type}.
+     *
+     * @param type type to describe.
+     * @return descriptor of the type.
+     */
+    private static String descriptor(final Class<?> type) {
+        if (type.isPrimitive()) {
+            return PRIMITIVES.get(type);
+        }
+        return type.isArray() ? internalName(type.getName()) : "L" + internalName(type.getName()) + ";";
+    }
+
+    /**
+     * Return method descriptor of {@code method}.
+     *
+     * @param method method to describe.
+     * @return descriptor of the method.
+     */
+    private static String descriptor(final Method method) {
+        final StringBuilder result = new StringBuilder("(");
+        Arrays.stream(method.getParameterTypes()).map(BytecodeGenerator::descriptor).forEach(result::append);
+        return result.append(")").append(descriptor(method.getReturnType())).toString();
+    }
+
+    /**
+     * Convert binary name to internal form.
+     *
+     * @param name binary name of class.
+     * @return name with slashes instead of dots.
+     */
+    private static String internalName(final String name) {
+        return name.replace('.', '/');
+    }
+
+    /**
+     * Add constant pool entry if it is absent.
+     *
+     * @param tag    tag of the entry.
+     * @param values content of the entry: strings are written as UTF-8, integers as two-byte indexes.
+     * @return index of the entry.
+     * @throws IOException never, all streams are in memory.
+     */
+    private int constant(final int tag, final Object... values) throws IOException {
+        final List<Object> key = List.of(tag, List.of(values));
+        final Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        poolWriter.writeByte(tag);
+        for (final Object value : values) {
+            if (value instanceof String) {
+                poolWriter.writeUTF((String) value);
+            } else {
+                poolWriter.writeShort((Integer) value);
+            }
+        }
+        constants.put(key, constants.size() + 1);
+        return constants.size();
+    }
+
+    /**
+     * Add {@code CONSTANT_Utf8} entry.
+     *
+     * @param value string constant.
+     * @return index of the entry.
+     * @throws IOException never, all streams are in memory.
+     */
+    private int utf8(final String value) throws IOException {
+        return constant(UTF8, value);
+    }
+
+    /**
+     * Add {@code CONSTANT_Class} entry.
+     *
+     * @param internalName internal name of class.
+     * @return index of the entry.
+     * @throws IOException never, all streams are in memory.
+     */
+    private int classConstant(final String internalName) throws IOException {
+        return constant(CLASS, utf8(internalName));
+    }
+
+    /**
+     * Add {@code CONSTANT_Methodref} entry.
+     *
+     * @param owner      index of class entry of method owner.
+     * @param name       name of the method.
+     * @param descriptor descriptor of the method.
+     * @return index of the entry.
+     * @throws IOException never, all streams are in memory.
+     */
+    private int methodRef(final int owner, final String name, final String descriptor) throws IOException {
+        return constant(METHOD_REF, owner, constant(NAME_AND_TYPE, utf8(name), utf8(descriptor)));
+    }
+}
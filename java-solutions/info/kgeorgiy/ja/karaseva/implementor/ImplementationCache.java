@@ -0,0 +1,281 @@
+package info.kgeorgiy.ja.karaseva.implementor;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent content-addressed cache of generated sources and class files.
+ * <p> Entry key is a hash of everything the generated code depends on: kind of the entry, structure of the interface
+ * (names, modifiers, return and parameter types, parameter names of all its methods, in sorted order, since
+ * order of {@link Class#getMethods()} is unspecified) and feature release of the running Java,
+ * which is the target release of the compiler. Changed interface gets a new key,
+ * so entries are never invalidated, only evicted.
+ * <p> Entries are immutable files written into a temporary file and atomically moved into place,
+ * so readers need no locks and several processes can share one directory.
+ * Eviction takes an exclusive lock on the {@code lock} file and removes least recently used entries
+ * until total size doesn't exceed the limit.
+ * <p> Cache is best effort: IO errors are treated as misses and never fail the implementor.
+ */
+class ImplementationCache {
+    /**
+     * Version of generated code. Should be increased when the generators change.
+     */
+    private static final int FORMAT = 1;
+
+    /**
+     * Name of the file locked during eviction.
+     */
+    private static final String LOCK = "lock";
+
+    /**
+     * Suffix of files which are being written.
+     */
+    private static final String TEMP = ".tmp";
+
+    /**
+     * Age of temporary file after which its writer is considered dead.
+     */
+    private static final Duration TEMP_TIMEOUT = Duration.ofMinutes(10);
+
+    /**
+     * Monitor guarding the lock file inside this process: {@link FileLock} is held on behalf of the whole process.
+     */
+    private static final Object PROCESS_LOCK = new Object();
+
+    /**
+     * Directory with cache entries.
+     */
+    private final Path directory;
+
+    /**
+     * Maximal total size of entries in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * Whether entries were stored since the last eviction.
+     */
+    private final AtomicBoolean stored = new AtomicBoolean();
+
+    /**
+     * Create cache in {@code directory} holding at most {@code maxSize} bytes.
+     * Directory is created on first write.
+     *
+     * @param directory directory with cache entries, may be shared with other processes.
+     * @param maxSize   maximal total size of entries in bytes.
+     */
+    ImplementationCache(final Path directory, final long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Return key of the {@code kind} entry generated for interface {@code token}.
+     *
+     * @param token realizable interface.
+     * @param kind  kind of generated code, for example {@code "java"} or {@code "class"}.
+     * @return hexadecimal SHA-256 of the interface structure, suffixed by {@code kind}.
+     */
+    static String key(final Class<?> token, final String kind) {
+        final StringBuilder description = new StringBuilder()
+                .append(FORMAT).append(' ').append(kind).append(' ')
+                .append(Runtime.version().feature()).append(' ')
+                .append(token.getModifiers()).append(' ').append(token.getName()).append('\n');
+        Arrays.stream(token.getMethods()).map(ImplementationCache::describe).sorted()
+                .forEach(method -> description.append(method).append('\n'));
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(description.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder result = new StringBuilder();
+            for (final byte b : hash) {
+                result.append(String.format("%02x", b));
+            }
+            return result.append('.').append(kind).toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is supported by every Java platform", e);
+        }
+    }
+
+    /**
+     * Return line describing {@code method} for the key.
+     *
+     * @param method method of the interface.
+     * @return modifiers, return type, name, types and names of parameters of {@code method}.
+     */
+    private static String describe(final Method method) {
+        return method.getModifiers() + " " + method.getReturnType().getName() + " " + method.getName()
+                + Arrays.stream(method.getParameters())
+                .map(parameter -> parameter.getType().getName() + " " + parameter.getName())
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    /**
+     * Return cached entry and mark it as recently used.
+     * <p> Marking is best effort: in a cache shared by several users only the owner of the file may change
+     * its modification time, and the entry is returned anyway.
+     *
+     * @param key key of the entry.
+     * @return content of the entry, or {@code null} if it isn't cached.
+     */
+    byte[] get(final String key) {
+        final Path file = directory.resolve(key);
+        final byte[] result;
+        try {
+            result = Files.readAllBytes(file);
+        } catch (final IOException e) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (final IOException ignored) {
+            // entry is evicted a bit earlier
+        }
+        return result;
+    }
+
+    /**
+     * Store entry. Concurrent writers of the same key write the same content, so the last move wins harmlessly.
+     *
+     * @param key   key of the entry.
+     * @param bytes content of the entry.
+     */
+    void put(final String key, final byte[] bytes) {
+        try {
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempFile(directory, key, TEMP);
+            try {
+                Files.write(temp, bytes);
+                try {
+                    // temporary files are readable only by their owner, entries are shared with other users
+                    Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+                } catch (final UnsupportedOperationException ignored) {
+                    // not a POSIX file system
+                }
+                Files.move(temp, directory.resolve(key),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                stored.set(true);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (final IOException ignored) {
+            // entry will be generated again next time
+        }
+    }
+
+    /**
+     * Remove least recently used entries until their total size doesn't exceed the limit,
+     * and temporary files left by crashed writers.
+     * <p> Does nothing if no entries were stored since the last eviction,
+     * so lookups which only hit the cache don't lock and list the directory.
+     */
+    void evict() {
+        if (!stored.getAndSet(false) || !Files.isDirectory(directory)) {
+            return;
+        }
+        synchronized (PROCESS_LOCK) {
+            try (final FileChannel channel = FileChannel.open(directory.resolve(LOCK),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                final FileLock lock = channel.lock();
+                try {
+                    evictLocked();
+                } finally {
+                    lock.release();
+                }
+            } catch (final IOException ignored) {
+                // eviction will be retried after the next write
+            }
+        }
+    }
+
+    /**
+     * Remove entries and temporary files while holding the lock.
+     *
+     * @throws IOException If the directory can't be listed or an entry can't be removed.
+     */
+    private void evictLocked() throws IOException {
+        final Instant tempDeadline = Instant.now().minus(TEMP_TIMEOUT);
+        final List<Entry> entries = new ArrayList<>();
+        long size = 0;
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                if (name.equals(LOCK)) {
+                    continue;
+                }
+                try {
+                    final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (name.endsWith(TEMP)) {
+                        if (attributes.lastModifiedTime().toInstant().isBefore(tempDeadline)) {
+                            Files.deleteIfExists(file);
+                        }
+                    } else if (attributes.isRegularFile()) {
+                        entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime()));
+                        size += attributes.size();
+                    }
+                } catch (final NoSuchFileException e) {
+                    // removed by another process
+                }
+            }
+        }
+        entries.sort(Comparator.comparing(entry -> entry.used));
+        for (int i = 0; i < entries.size() && size > maxSize; i++) {
+            Files.deleteIfExists(entries.get(i).file);
+            size -= entries.get(i).size;
+        }
+    }
+
+    /**
+     * Cache entry seen during eviction.
+     */
+    private static class Entry {
+        /**
+         * File of the entry.
+         */
+        private final Path file;
+
+        /**
+         * Size of the entry in bytes.
+         */
+        private final long size;
+
+        /**
+         * Time of the last use of the entry.
+         */
+        private final FileTime used;
+
+        /**
+         * Create entry.
+         *
+         * @param file file of the entry.
+         * @param size size of the entry in bytes.
+         * @param used time of the last use of the entry.
+         */
+        Entry(final Path file, final long size, final FileTime used) {
+            this.file = file;
+            this.size = size;
+            this.used = used;
+        }
+    }
+}
@@ -3,21 +3,42 @@ package info.kgeorgiy.ja.karaseva.implementor;
 import info.kgeorgiy.java.advanced.implementor.ImplerException;
 import info.kgeorgiy.java.advanced.implementor.JarImpler;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -40,9 +61,61 @@ public class Implementor implements JarImpler {
     private final static String INDENT = "    ";
 
     /**
-     * Default constructor.
+     * Implementations defined at runtime by {@link #defineImplementation(Class)}, at most one per interface.
+     */
+    private static final ClassValue<Class<?>> DEFINED = new ClassValue<>() {
+        @Override
+        protected Class<?> computeValue(final Class<?> token) {
+            try {
+                return MethodHandles.privateLookupIn(token, MethodHandles.lookup())
+                        .defineClass(BytecodeGenerator.generate(token, getClassName(token)));
+            } catch (final IllegalAccessException e) {
+                throw new IllegalStateException("No access to package of " + token.getCanonicalName(), e);
+            }
+        }
+    };
+
+    /**
+     * If {@code true}, class files are generated by {@link BytecodeGenerator} instead of compiling sources.
+     */
+    private final boolean bytecode;
+
+    /**
+     * Cache of generated sources and class files, {@code null} if caching is disabled.
+     */
+    private final ImplementationCache cache;
+
+    /**
+     * Default constructor. Jar-files are created by compiling generated sources.
      */
     public Implementor() {
+        this(false);
+    }
+
+    /**
+     * Create implementor choosing how class files for jar-files are produced.
+     *
+     * @param bytecode if {@code true}, class files are written directly and no java compiler is needed,
+     *                 otherwise generated sources are compiled.
+     */
+    public Implementor(final boolean bytecode) {
+        this.bytecode = bytecode;
+        this.cache = null;
+    }
+
+    /**
+     * Create implementor reusing generated sources and class files from persistent cache in {@code cacheDirectory}.
+     * <p> Entries are keyed by structure of the interface and Java release, see {@link ImplementationCache}.
+     * Cache directory may be shared by several processes.
+     *
+     * @param bytecode       if {@code true}, class files are written directly and no java compiler is needed,
+     *                       otherwise generated sources are compiled.
+     * @param cacheDirectory directory of the cache.
+     * @param cacheSize      maximal total size of cached entries in bytes.
+     */
+    public Implementor(final boolean bytecode, final Path cacheDirectory, final long cacheSize) {
+        this.bytecode = bytecode;
+        this.cache = new ImplementationCache(cacheDirectory, cacheSize);
     }
 
     /**
@@ -102,6 +175,46 @@ public class Implementor implements JarImpler {
      */
     @Override
     public void implement(final Class<?> token, final Path root) throws ImplerException {
+        checkToken(token);
+
+        try (final BufferedWriter writer = Files.newBufferedWriter(createDirs(getPath(token, root, ".java")))) {
+            writer.write(getSource(token));
+        } catch (final IOException e) {
+            throw new ImplerException("IO error while saving result: " + e.getMessage(), e);
+        }
+        if (cache != null) {
+            // does nothing if the source was taken from the cache
+            cache.evict();
+        }
+    }
+
+    /**
+     * Return java-code of implementation of {@code token}, taking it from the cache if possible.
+     *
+     * @param token realizable interface.
+     * @return java-code with international symbols converted to Unicode escapes.
+     */
+    private String getSource(final Class<?> token) {
+        if (cache == null) {
+            return encodingUnicode(buildClass(token));
+        }
+        final String key = ImplementationCache.key(token, "java");
+        final byte[] cached = cache.get(key);
+        if (cached != null) {
+            return new String(cached, StandardCharsets.US_ASCII);
+        }
+        final String source = encodingUnicode(buildClass(token));
+        cache.put(key, source.getBytes(StandardCharsets.US_ASCII));
+        return source;
+    }
+
+    /**
+     * Check that an implementation of {@code token} can be generated.
+     *
+     * @param token realizable interface.
+     * @throws ImplerException If {@code token} isn't an interface or is private.
+     */
+    private static void checkToken(final Class<?> token) throws ImplerException {
         if (!token.isInterface()) {
             throw new ImplerException("The token(" + token.getCanonicalName() + ") must be an interface");
         }
@@ -109,12 +222,6 @@ public class Implementor implements JarImpler {
         if (Modifier.isPrivate(token.getModifiers())) {
             throw new ImplerException("Can't implement private interface: " + token.getCanonicalName());
         }
-
-        try (final BufferedWriter writer = Files.newBufferedWriter(createDirs(getPath(token, root, ".java")))) {
-            writer.write(encodingUnicode(buildClass(token)));
-        } catch (final IOException e) {
-            throw new ImplerException("IO error while saving result: " + e.getMessage(), e);
-        }
     }
 
     /**
@@ -245,28 +352,78 @@ public class Implementor implements JarImpler {
 
     /**
      * Generate java-code with implementation of interface {@code token} and save result in jar-file by {@code jarFile}.
-     * <p> Call {@code implement} to generate class and save result in {@code .java} file in temporary directory.
-     * Then compile it and add in {@code .jar} file which saved on the {@code jarFile}.
+     * <p> Call {@code implementJar} for the collection containing only {@code token}.
      *
      * @param token interface to create implementation for. Shouldn't be private.
-     * @throws ImplerException If can't create temporary directory, or compile error,
-     *                         or error during method {@code implement}, or error during creating {@code .jar}.
+     * @throws ImplerException If {@code token} is incorrect, or compile error, or error during creating {@code .jar}.
      */
     @Override
     public void implementJar(final Class<?> token, final Path jarFile) throws ImplerException {
-        final Path temp;
-        try {
-            temp = Files.createTempDirectory(jarFile.toAbsolutePath().getParent(), "temp");
-        } catch (final IOException e) {
-            throw new ImplerException("Error during creating temporary directory: " + e.getMessage(), e);
+        implementJar(List.of(token), jarFile);
+    }
+
+    /**
+     * Generate implementations of all interfaces from {@code tokens} and save them in one jar-file by {@code jarFile}.
+     * <p> Sources are generated in parallel into memory, compiled by a single {@link JavaCompiler} task
+     * with {@link MemoryFileManager} and class bytes are written directly into {@code .jar} file.
+     * If implementor was created with {@code bytecode} flag, class files are generated by {@link BytecodeGenerator}
+     * and compiler isn't used. No temporary files are created.
+     * <p> If implementor has a cache, class files of unchanged interfaces are taken from it
+     * and only the rest are generated.
+     *
+     * @param tokens  interfaces to create implementations for. Shouldn't be private.
+     * @param jarFile path of {@code .jar} file to create.
+     * @throws ImplerException If any of {@code tokens} is incorrect, or implementations of two of them have the same name,
+     *                         or compile error, or error during creating {@code .jar}.
+     */
+    public void implementJar(final Collection<Class<?>> tokens, final Path jarFile) throws ImplerException {
+        final Set<Class<?>> unique = new LinkedHashSet<>(tokens);
+        final Map<String, Class<?>> names = new HashMap<>();
+        for (final Class<?> token : unique) {
+            checkToken(token);
+            final Class<?> other = names.putIfAbsent(getClassName(token), token);
+            if (other != null) {
+                throw new ImplerException("Implementations of " + other.getCanonicalName() + " and "
+                        + token.getCanonicalName() + " have the same name: " + getClassName(token));
+            }
         }
 
-        implement(token, temp);
-        compile(token, temp);
+        final String kind = bytecode ? "bytecode" : "class";
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        final List<Class<?>> missing = new ArrayList<>();
+        for (final Class<?> token : unique) {
+            final byte[] cached = cache != null ? cache.get(ImplementationCache.key(token, kind)) : null;
+            // keeps order of classes in the jar independent of the cache
+            classes.put(getClassName(token), cached);
+            if (cached == null) {
+                missing.add(token);
+            }
+        }
 
-        try (final JarOutputStream writer = new JarOutputStream(Files.newOutputStream(jarFile), getManifest())) {
-            writer.putNextEntry(new ZipEntry(token.getPackageName().replace('.', '/') + "/" + token.getSimpleName() + "Impl.class"));
-            Files.copy(getPath(token, temp, ".class"), writer);
+        if (!missing.isEmpty()) {
+            if (bytecode) {
+                for (final Class<?> token : missing) {
+                    classes.put(getClassName(token), BytecodeGenerator.generate(token, getClassName(token)));
+                }
+            } else {
+                final List<JavaFileObject> sources = missing.parallelStream()
+                        .map(token -> new SourceFile(getClassName(token), getSource(token)))
+                        .collect(Collectors.toList());
+                classes.putAll(compile(missing, sources));
+            }
+            if (cache != null) {
+                for (final Class<?> token : missing) {
+                    cache.put(ImplementationCache.key(token, kind), classes.get(getClassName(token)));
+                }
+                cache.evict();
+            }
+        }
+
+        try (final JarOutputStream writer = new JarOutputStream(Files.newOutputStream(createDirs(jarFile)), getManifest())) {
+            for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                writer.putNextEntry(new ZipEntry(entry.getKey().replace('.', '/') + ".class"));
+                writer.write(entry.getValue());
+            }
         } catch (final InvalidPathException e) {
             throw new ImplerException("Path is invalid: " + e.getMessage(), e);
         } catch (final IOException e) {
@@ -274,20 +431,163 @@ public class Implementor implements JarImpler {
         }
     }
 
-    private static void compile(final Class<?> token, final Path temp) throws ImplerException {
+    /**
+     * Define implementation of interface {@code token} at runtime, in the class loader and package of {@code token}.
+     * <p> Class file is generated by {@link BytecodeGenerator}, neither sources nor compiler are used.
+     * Every interface is implemented once, next calls return the same class.
+     *
+     * @param token interface to create implementation for. Shouldn't be private.
+     * @return class implementing {@code token} with public default constructor.
+     * @throws ImplerException If {@code token} is incorrect, or its package isn't open for this module,
+     *                         or class with the same name is already defined by its class loader.
+     */
+    public static Class<?> defineImplementation(final Class<?> token) throws ImplerException {
+        checkToken(token);
+        try {
+            return DEFINED.get(token);
+        } catch (final IllegalStateException | LinkageError e) {
+            throw new ImplerException("Can't define implementation: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Return binary name of the class implementing {@code token}.
+     *
+     * @param token realizable interface.
+     * @return name of the generated class with package.
+     */
+    private static String getClassName(final Class<?> token) {
+        return (token.getPackageName().isEmpty() ? "" : token.getPackageName() + ".") + token.getSimpleName() + "Impl";
+    }
+
+    /**
+     * Compile {@code sources} in memory by one compiler task.
+     * <p> Class path consists of locations of all {@code tokens}.
+     *
+     * @param tokens  realizable interfaces.
+     * @param sources generated sources.
+     * @return map from binary class names to class bytes, in the order classes were generated.
+     * @throws ImplerException If there is no java compiler, or location of a token is invalid, or compile error.
+     */
+    private static Map<String, byte[]> compile(final Collection<Class<?>> tokens,
+                                               final List<JavaFileObject> sources) throws ImplerException {
         final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
         if (compiler == null) {
             throw new ImplerException("Can't create java compiler");
         }
-        final String classPath;
-        try {
-            classPath = Path.of(token.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
-        } catch (final URISyntaxException e) {
-            throw new ImplerException("Can't get URI", e);
+        final Set<String> classPath = new LinkedHashSet<>();
+        for (final Class<?> token : tokens) {
+            final CodeSource source = token.getProtectionDomain().getCodeSource();
+            if (source != null) {
+                try {
+                    classPath.add(Path.of(source.getLocation().toURI()).toString());
+                } catch (final URISyntaxException e) {
+                    throw new ImplerException("Can't get URI", e);
+                }
+            }
         }
-        final String[] args = new String[]{"-cp", classPath, getPath(token, temp, ".java").toString()};
-        if (compiler.run(null, null, null, args) != 0) {
-            throw new ImplerException("Compile error");
+
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (final MemoryFileManager fileManager =
+                     new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, null))) {
+            final List<String> options = List.of("-cp", String.join(File.pathSeparator, classPath));
+            if (!compiler.getTask(null, fileManager, diagnostics, options, null, sources).call()) {
+                throw new ImplerException("Compile error: " + diagnostics.getDiagnostics().stream()
+                        .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                        .map(diagnostic -> diagnostic.getMessage(null))
+                        .collect(Collectors.joining(NEWLINE)));
+            }
+            return fileManager.getClasses();
+        } catch (final IOException e) {
+            throw new ImplerException("IO error during compilation: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Source of generated class kept in memory.
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+        /**
+         * Java-code of the class.
+         */
+        private final String code;
+
+        /**
+         * Create source file for class {@code className} containing {@code code}.
+         *
+         * @param className binary name of the class.
+         * @param code      java-code of the class.
+         */
+        SourceFile(final String className, final String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * Class file written by compiler into memory.
+     */
+    private static class ClassFile extends SimpleJavaFileObject {
+        /**
+         * Bytes of the class.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * Create class file for class {@code className}.
+         *
+         * @param className binary name of the class.
+         */
+        ClassFile(final String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+    }
+
+    /**
+     * {@link javax.tools.JavaFileManager} which keeps compiled classes in memory.
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        /**
+         * Compiled classes by binary names.
+         */
+        private final Map<String, ClassFile> classes = new LinkedHashMap<>();
+
+        /**
+         * Create file manager delegating everything except class output to {@code fileManager}.
+         *
+         * @param fileManager standard file manager of the compiler.
+         */
+        MemoryFileManager(final StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                                   final JavaFileObject.Kind kind, final FileObject sibling) {
+            final ClassFile file = new ClassFile(className);
+            classes.put(className, file);
+            return file;
+        }
+
+        /**
+         * Return bytes of compiled classes.
+         *
+         * @return map from binary class names to class bytes.
+         */
+        Map<String, byte[]> getClasses() {
+            final Map<String, byte[]> result = new LinkedHashMap<>();
+            classes.forEach((name, file) -> result.put(name, file.bytes.toByteArray()));
+            return result;
         }
     }
 
@@ -0,0 +1,217 @@
+package info.kgeorgiy.ja.karaseva.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+// immutable roster stored by columns: ids, dictionary codes of first and last names and group ordinals.
+// Dictionaries are sorted, so comparing codes is the same as comparing names, and a name is stored once however
+// many students have it. Queries of StudentQuery (over the whole roster) are loops over primitive arrays;
+// Student objects are created only for the result
+public class ColumnarStudentDB {
+    private static final GroupName[] GROUPS = GroupName.values();
+
+    private final int size;
+    private final int[] ids;
+    private final String[] firstNames;
+    private final int[] firstNameCodes;
+    private final String[] lastNames;
+    private final int[] lastNameCodes;
+    private final byte[] groups;
+    // row numbers in StudentDB.comparatorByName order and in id order
+    private final int[] byName;
+    private final int[] byId;
+    // position of every row in byName
+    private final int[] nameRanks;
+    private final SortedSet<String> distinctFirstNames;
+
+    public ColumnarStudentDB(Collection<Student> students) {
+        size = students.size();
+        ids = new int[size];
+        groups = new byte[size];
+        firstNameCodes = new int[size];
+        lastNameCodes = new int[size];
+        firstNames = students.stream().map(Student::getFirstName).distinct().sorted().toArray(String[]::new);
+        lastNames = students.stream().map(Student::getLastName).distinct().sorted().toArray(String[]::new);
+
+        int row = 0;
+        for (Student student : students) {
+            ids[row] = student.getId();
+            groups[row] = (byte) student.getGroup().ordinal();
+            firstNameCodes[row] = Arrays.binarySearch(firstNames, student.getFirstName());
+            lastNameCodes[row] = Arrays.binarySearch(lastNames, student.getLastName());
+            row++;
+        }
+
+        // same order as StudentDB.comparatorByName: last name and first name descending, then id
+        byName = permutation(Comparator
+                .comparingInt((Integer i) -> -lastNameCodes[i])
+                .thenComparingInt(i -> -firstNameCodes[i])
+                .thenComparingInt(i -> ids[i]));
+        byId = permutation(Comparator.comparingInt(i -> ids[i]));
+        nameRanks = new int[size];
+        for (int i = 0; i < size; i++) {
+            nameRanks[byName[i]] = i;
+        }
+        // the dictionary is exactly the set of distinct first names, already sorted
+        distinctFirstNames = Collections.unmodifiableSortedSet(new TreeSet<>(Arrays.asList(firstNames)));
+    }
+
+    // sorting boxed row numbers is done once here, queries only walk the result
+    private int[] permutation(Comparator<Integer> comparator) {
+        final Integer[] rows = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        Arrays.sort(rows, comparator);
+        return Arrays.stream(rows).mapToInt(Integer::intValue).toArray();
+    }
+
+    private Student student(int row) {
+        return new Student(ids[row], firstNames[firstNameCodes[row]], lastNames[lastNameCodes[row]], GROUPS[groups[row]]);
+    }
+
+    private List<Student> students(int[] rows, int count) {
+        final List<Student> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(student(rows[i]));
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<String> getFirstNames() {
+        final List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(firstNames[firstNameCodes[i]]);
+        }
+        return result;
+    }
+
+    public List<String> getLastNames() {
+        final List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(lastNames[lastNameCodes[i]]);
+        }
+        return result;
+    }
+
+    public List<GroupName> getGroups() {
+        final List<GroupName> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(GROUPS[groups[i]]);
+        }
+        return result;
+    }
+
+    public List<String> getFullNames() {
+        final List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(firstNames[firstNameCodes[i]] + " " + lastNames[lastNameCodes[i]]);
+        }
+        return result;
+    }
+
+    public SortedSet<String> getDistinctFirstNames() {
+        return distinctFirstNames;
+    }
+
+    // as in StudentDB, the first of the students with the maximal id; byId keeps rows with equal ids in row order
+    public String getMaxStudentFirstName() {
+        if (size == 0) {
+            return "";
+        }
+        int last = size - 1;
+        while (last > 0 && ids[byId[last - 1]] == ids[byId[last]]) {
+            last--;
+        }
+        return firstNames[firstNameCodes[byId[last]]];
+    }
+
+    public List<Student> sortStudentsById() {
+        return students(byId, size);
+    }
+
+    public List<Student> sortStudentsByName() {
+        return students(byName, size);
+    }
+
+    // matching rows in comparatorByName order: the column is scanned sequentially, and only the ranks
+    // of the matches are collected and sorted, so a rare value costs no allocation of the roster size
+    private List<Student> find(IntPredicate matches) {
+        int[] ranks = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (matches.test(row)) {
+                if (count == ranks.length) {
+                    ranks = Arrays.copyOf(ranks, count * 2);
+                }
+                ranks[count++] = nameRanks[row];
+            }
+        }
+        Arrays.sort(ranks, 0, count);
+        final List<Student> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(student(byName[ranks[i]]));
+        }
+        return result;
+    }
+
+    private List<Student> findByCode(int[] column, int code) {
+        if (code < 0) {
+            return new ArrayList<>();
+        }
+        return find(row -> column[row] == code);
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        return findByCode(firstNameCodes, Arrays.binarySearch(firstNames, name));
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        return findByCode(lastNameCodes, Arrays.binarySearch(lastNames, name));
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        final int code = group.ordinal();
+        return find(row -> groups[row] == code);
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        final int code = group.ordinal();
+        // smallest first name code for every last name code
+        final int[] minFirstName = new int[lastNames.length];
+        Arrays.fill(minFirstName, Integer.MAX_VALUE);
+        for (int i = 0; i < size; i++) {
+            if (groups[i] == code) {
+                minFirstName[lastNameCodes[i]] = Math.min(minFirstName[lastNameCodes[i]], firstNameCodes[i]);
+            }
+        }
+        final Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < lastNames.length; i++) {
+            if (minFirstName[i] != Integer.MAX_VALUE) {
+                result.put(lastNames[i], firstNames[minFirstName[i]]);
+            }
+        }
+        return result;
+    }
+
+    public Map<GroupName, Integer> getGroupSizes() {
+        final int[] counts = new int[GROUPS.length];
+        for (int i = 0; i < size; i++) {
+            counts[groups[i]]++;
+        }
+        final Map<GroupName, Integer> result = new EnumMap<>(GroupName.class);
+        for (int i = 0; i < GROUPS.length; i++) {
+            if (counts[i] > 0) {
+                result.put(GROUPS[i], counts[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+package info.kgeorgiy.ja.karaseva.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// roster of students with hash indexes by group, first name and last name.
+// Every index entry is kept sorted by StudentDB.comparatorByName, so find* queries cost O(1) plus the result size
+// and do not sort. add and remove find the place in O(log n) but shift the lists, so they cost O(n) in the worst case
+public class IndexedStudentDB {
+    private final List<Student> byName = new ArrayList<>();
+    private final Map<GroupName, List<Student>> byGroup = new HashMap<>();
+    private final Map<String, List<Student>> byFirstName = new HashMap<>();
+    private final Map<String, List<Student>> byLastName = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public IndexedStudentDB(Collection<Student> students) {
+        // sorting once and appending keeps every index sorted without binary searches
+        final List<Student> sorted = new ArrayList<>(students);
+        sorted.sort(StudentDB.comparatorByName);
+        for (Student student : sorted) {
+            byName.add(student);
+            index(byGroup, student.getGroup()).add(student);
+            index(byFirstName, student.getFirstName()).add(student);
+            index(byLastName, student.getLastName()).add(student);
+        }
+    }
+
+    private static <K> List<Student> index(Map<K, List<Student>> index, K key) {
+        return index.computeIfAbsent(key, k -> new ArrayList<>());
+    }
+
+    private static void insert(List<Student> sorted, Student student) {
+        final int position = Collections.binarySearch(sorted, student, StudentDB.comparatorByName);
+        sorted.add(position < 0 ? -position - 1 : position, student);
+    }
+
+    // position of a student equal to the given one, or -1. comparatorByName ignores the group,
+    // so the run of students it considers equal is searched for an equal one
+    private static int indexOf(List<Student> sorted, Student student) {
+        final int position = Collections.binarySearch(sorted, student, StudentDB.comparatorByName);
+        if (position < 0) {
+            return -1;
+        }
+        for (int i = position; i >= 0 && StudentDB.comparatorByName.compare(sorted.get(i), student) == 0; i--) {
+            if (sorted.get(i).equals(student)) {
+                return i;
+            }
+        }
+        for (int i = position + 1; i < sorted.size()
+                && StudentDB.comparatorByName.compare(sorted.get(i), student) == 0; i++) {
+            if (sorted.get(i).equals(student)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static <K> void remove(Map<K, List<Student>> index, K key, Student student) {
+        final List<Student> students = index.get(key);
+        students.remove(indexOf(students, student));
+        if (students.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    public void add(Student student) {
+        lock.writeLock().lock();
+        try {
+            insert(byName, student);
+            insert(index(byGroup, student.getGroup()), student);
+            insert(index(byFirstName, student.getFirstName()), student);
+            insert(index(byLastName, student.getLastName()), student);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // removes one student equal to the given one, does nothing if there is no such student
+    public void remove(Student student) {
+        lock.writeLock().lock();
+        try {
+            final int position = indexOf(byName, student);
+            if (position < 0) {
+                return;
+            }
+            byName.remove(position);
+            remove(byGroup, student.getGroup(), student);
+            remove(byFirstName, student.getFirstName(), student);
+            remove(byLastName, student.getLastName(), student);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private <K> List<Student> find(Map<K, List<Student>> index, K key) {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(index.getOrDefault(key, List.of()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Student> sortStudentsByName() {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(byName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        return find(byFirstName, name);
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        return find(byLastName, name);
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        return find(byGroup, group);
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        final Map<String, String> names = new HashMap<>();
+        for (Student student : find(byGroup, group)) {
+            names.merge(student.getLastName(), student.getFirstName(), (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        return names;
+    }
+}
@@ -6,14 +6,17 @@ import info.kgeorgiy.java.advanced.student.StudentQuery;
 
 import java.util.*;
 import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class StudentDB implements StudentQuery {
 
-    private final Comparator<Student> comparatorByName = Comparator
+    static final Comparator<Student> comparatorByName = Comparator
             .comparing(Student::getLastName, Comparator.reverseOrder())
             .thenComparing(Student::getFirstName, Comparator.reverseOrder())
             .thenComparingInt(Student::getId);
@@ -104,4 +107,96 @@ public class StudentDB implements StudentQuery {
                         BinaryOperator.minBy(String::compareTo))
                 );
     }
+
+    // student with its position in the input: ties are broken by the position, so the order is the same
+    // as of the stable sort of the unpaginated queries, and consecutive pages neither overlap nor leave gaps
+    private static class Ranked {
+        private final long index;
+        private final Student student;
+
+        Ranked(long index, Student student) {
+            this.index = index;
+            this.student = student;
+        }
+    }
+
+    private static Comparator<Ranked> ranked(Comparator<Student> cmp) {
+        return Comparator.<Ranked, Student>comparing(ranked -> ranked.student, cmp)
+                .thenComparingLong(ranked -> ranked.index);
+    }
+
+    // smallest offset + limit students by cmp kept in a bounded max-heap: O(n log(offset + limit)) instead of a full sort
+    private List<Student> topStudents(Collection<Student> students, Predicate<Student> predicate,
+                                      Comparator<Student> cmp, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must be >= 0");
+        }
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        final int k = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        final Comparator<Ranked> order = ranked(cmp);
+        final PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.min(k, 1 << 16), order.reversed());
+        long index = 0;
+        for (Student student : students) {
+            if (predicate.test(student)) {
+                final Ranked current = new Ranked(index++, student);
+                if (heap.size() < k) {
+                    heap.add(current);
+                } else if (order.compare(current, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(current);
+                }
+            }
+        }
+        final List<Ranked> top = new ArrayList<>(heap);
+        top.sort(order);
+        return top.size() <= offset ? new ArrayList<>() : top.subList(offset, top.size()).stream()
+                .map(ranked -> ranked.student)
+                .collect(Collectors.toList());
+    }
+
+    public List<Student> sortStudentsById(Collection<Student> students, int offset, int limit) {
+        return topStudents(students, student -> true, Comparator.comparingInt(Student::getId), offset, limit);
+    }
+
+    public List<Student> sortStudentsByName(Collection<Student> students, int offset, int limit) {
+        return topStudents(students, student -> true, comparatorByName, offset, limit);
+    }
+
+    public List<Student> findStudentsByFirstName(Collection<Student> students, String name, int offset, int limit) {
+        return topStudents(students, student -> student.getFirstName().equals(name), comparatorByName, offset, limit);
+    }
+
+    public List<Student> findStudentsByLastName(Collection<Student> students, String name, int offset, int limit) {
+        return topStudents(students, student -> student.getLastName().equals(name), comparatorByName, offset, limit);
+    }
+
+    public List<Student> findStudentsByGroup(Collection<Student> students, GroupName group, int offset, int limit) {
+        return topStudents(students, student -> student.getGroup().equals(group), comparatorByName, offset, limit);
+    }
+
+    // matching students in comparatorByName order, sorted lazily: the heap is built when the stream is consumed
+    // (expected O(n)) and every taken element costs O(log n), so a page of k students costs O(n + k log n)
+    public Stream<Student> streamStudentsByName(Collection<Student> students, Predicate<Student> predicate) {
+        final int characteristics = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL;
+        return StreamSupport.stream(() -> {
+            final List<Student> matching = filterStudents(students, predicate);
+            final PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.max(1, matching.size()),
+                    ranked(comparatorByName));
+            for (int i = 0; i < matching.size(); i++) {
+                heap.add(new Ranked(i, matching.get(i)));
+            }
+            return new Spliterators.AbstractSpliterator<Student>(heap.size(), characteristics) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Student> action) {
+                    if (heap.isEmpty()) {
+                        return false;
+                    }
+                    action.accept(heap.poll().student);
+                    return true;
+                }
+            };
+        }, characteristics, false);
+    }
 }
@@ -6,14 +6,14 @@ set myPackage=info\kgeorgiy\ja\karaseva\implementor\
 set fullPath=..\..\java-advanced-2021\modules\info.kgeorgiy.java.advanced.implementor\info\kgeorgiy\java\advanced\implementor\
 
 javac %fullPath%ImplerException.java -cp %fullPath%ImplerException.class %fullPath%Impler.java -cp %moduleDir% %fullPath%JarImpler.java
-javac -cp %moduleDir% %myPackage%Implementor.java
+javac -cp %moduleDir% %myPackage%*.java
 
 mkdir %modulePackage%
 move %fullPath%ImplerException.class %modulePackage%ImplerException.class
 move %fullPath%Impler.class %modulePackage%Impler.class
 move %fullPath%JarImpler.class %modulePackage%JarImpler.class
 
-jar -cfm implementor.jar MANIFEST.MF %modulePackage%ImplerException.class %modulePackage%Impler.class %modulePackage%JarImpler.class %myPackage%Implementor.class
+jar -cfm implementor.jar MANIFEST.MF %modulePackage%ImplerException.class %modulePackage%Impler.class %modulePackage%JarImpler.class %myPackage%Implementor*.class %myPackage%BytecodeGenerator.class %myPackage%ImplementationCache*.class
 
-del %myPackage%Implementor.class
+del %myPackage%*.class
 rd /s /q info\kgeorgiy\java\
\ No newline at end of file
@@ -1,5 +1,7 @@
 javadoc -d javadoc -private -link https://docs.oracle.com/en/java/javase/11/docs/api/ ^
     info\kgeorgiy\ja\karaseva\implementor\Implementor.java ^
+    info\kgeorgiy\ja\karaseva\implementor\BytecodeGenerator.java ^
+    info\kgeorgiy\ja\karaseva\implementor\ImplementationCache.java ^
   ..\..\java-advanced-2021\modules\info.kgeorgiy.java.advanced.implementor\info\kgeorgiy\java\advanced\implementor\Impler.java ^
   ..\..\java-advanced-2021\modules\info.kgeorgiy.java.advanced.implementor\info\kgeorgiy\java\advanced\implementor\JarImpler.java ^
   ..\..\java-advanced-2021\modules\info.kgeorgiy.java.advanced.implementor\info\kgeorgiy\java\advanced\implementor\ImplerException.java
\ No newline at end of file